@@ -0,0 +1,125 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly values are generated for each of the test schemas, both on their own and
+ * when encoded the way the CLI encodes them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+
+  private static final String SCHEMA_DIR = "test-schemas";
+
+  @Param({
+      "array.json",
+      "decimals.json",
+      "enum.json",
+      "fixed.json",
+      "iteration.json",
+      "logical-types.json",
+      "mapped-options.json",
+      "maps.json",
+      "matryoshka-dolls.json",
+      "nulls.json",
+      "odds.json",
+      "options-file.json",
+      "options.json",
+      "primitives.json",
+      "ranges.json",
+      "recursive.json",
+      "regex.json",
+      "unions.json",
+      "weighted-options.json"
+  })
+  public String schema;
+
+  private Generator generator;
+  private EncodedRecords records;
+  private BinaryEncoder binaryEncoder;
+  private Encoder jsonEncoder;
+  private JsonLinesWriter jsonLinesWriter;
+
+  @Setup
+  public void setUp() throws IOException {
+    Schema parsed;
+    try (InputStream schemaStream =
+        GeneratorBenchmark.class.getClassLoader().getResourceAsStream(SCHEMA_DIR + "/" + schema)) {
+      parsed = new Schema.Parser().parse(schemaStream);
+    }
+    generator = new Generator.Builder()
+        .schema(parsed)
+        .build();
+    records = new EncodedRecords();
+    binaryEncoder = EncoderFactory.get().directBinaryEncoder(records, null);
+    jsonEncoder = EncoderFactory.get().jsonEncoder(parsed, records);
+    jsonLinesWriter = new JsonLinesWriter(parsed, false);
+  }
+
+  @Benchmark
+  public Object generate() {
+    return generator.generate();
+  }
+
+  @Benchmark
+  public int generateBinary() throws IOException {
+    records.reset();
+    generator.generateTo(binaryEncoder);
+    return records.size();
+  }
+
+  @Benchmark
+  public int generateJson() throws IOException {
+    records.reset();
+    generator.generateTo(jsonEncoder);
+    jsonEncoder.flush();
+    return records.size();
+  }
+
+  @Benchmark
+  public int generateJsonLines() throws IOException {
+    records.reset();
+    jsonLinesWriter.write(generator.generate());
+    jsonLinesWriter.writeTo(records);
+    return records.size();
+  }
+}
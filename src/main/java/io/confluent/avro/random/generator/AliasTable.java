@@ -0,0 +1,88 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+
+package io.confluent.avro.random.generator;
+
+/**
+ * Samples indices with probabilities proportional to a set of weights in constant time, using
+ * Walker's alias method (with Vose's construction).
+ */
+final class AliasTable {
+
+  private final double[] probabilities;
+  private final int[] aliases;
+
+  /**
+   * @param weights The (non-negative) weight of each index; at least one must be positive.
+   */
+  public AliasTable(double[] weights) {
+    int size = weights.length;
+    double total = 0;
+    for (double weight : weights) {
+      total += weight;
+    }
+
+    probabilities = new double[size];
+    aliases = new int[size];
+    double[] scaled = new double[size];
+    int[] small = new int[size];
+    int[] large = new int[size];
+    int smallCount = 0;
+    int largeCount = 0;
+    for (int i = 0; i < size; i++) {
+      scaled[i] = weights[i] * size / total;
+      if (scaled[i] < 1.0) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      probabilities[less] = scaled[less];
+      aliases[less] = more;
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+      if (scaled[more] < 1.0) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // Whatever is left over is only off from 1.0 due to rounding
+    while (largeCount > 0) {
+      int index = large[--largeCount];
+      probabilities[index] = 1.0;
+      aliases[index] = index;
+    }
+    while (smallCount > 0) {
+      int index = small[--smallCount];
+      probabilities[index] = 1.0;
+      aliases[index] = index;
+    }
+  }
+
+  /**
+   * @param random The source of randomness for the draw.
+   * @return An index, chosen with probability proportional to its weight.
+   */
+  public int next(RandomSource random) {
+    int column = random.nextInt(probabilities.length);
+    return random.nextDouble() < probabilities[column] ? column : aliases[column];
+  }
+}
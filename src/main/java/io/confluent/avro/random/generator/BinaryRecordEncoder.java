@@ -0,0 +1,40 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.IOException;
+
+/**
+ * Encodes records in Avro's binary encoding, writing them directly from the generator.
+ */
+class BinaryRecordEncoder implements RecordEncoder {
+
+  private BinaryEncoder encoder;
+
+  @Override
+  public void encode(Generator generator, int count, EncodedRecords records) throws IOException {
+    // EncodedRecords is unsynchronized and in memory, so there is nothing to gain from buffering
+    encoder = EncoderFactory.get().directBinaryEncoder(records, encoder);
+    for (int i = 0; i < count; i++) {
+      generator.generateTo(encoder);
+      records.endRecord();
+    }
+  }
+}
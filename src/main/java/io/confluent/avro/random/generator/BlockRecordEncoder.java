@@ -0,0 +1,87 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.file.DataFileWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes records in Avro's binary encoding, and then groups and compresses them into finished
+ * object container file blocks, sync markers included. Every batch of records ends a block, so
+ * batches encoded on different threads can be appended to the same file in order.
+ *
+ * <p>The blocks of a batch are written to the buffer as a whole rather than record by record: the
+ * first record of the buffer holds every block, and the rest are empty, which keeps the count of
+ * records in the buffer right.
+ */
+class BlockRecordEncoder implements RecordEncoder {
+
+  private final DataFileFormat format;
+  private final BinaryRecordEncoder binaryEncoder;
+  private final EncodedRecords encoded;
+  private final Redirect output;
+  private DataFileWriter<Object> writer;
+
+  public BlockRecordEncoder(DataFileFormat format) {
+    this.format = format;
+    this.binaryEncoder = new BinaryRecordEncoder();
+    this.encoded = new EncodedRecords();
+    this.output = new Redirect();
+  }
+
+  @Override
+  public void encode(Generator generator, int count, EncodedRecords records) throws IOException {
+    if (writer == null) {
+      // The header is only written once, by the sink; this one goes nowhere
+      writer = format.createWriter(generator.schema(), output);
+      writer.flush();
+    }
+    encoded.reset();
+    binaryEncoder.encode(generator, count, encoded);
+
+    output.target = records;
+    for (int i = 0; i < encoded.records(); i++) {
+      writer.appendEncoded(encoded.record(i));
+    }
+    writer.flush();
+    output.target = null;
+    for (int i = 0; i < count; i++) {
+      records.endRecord();
+    }
+  }
+
+  // Lets the writer's output go to a different buffer for every batch
+  private static class Redirect extends OutputStream {
+    private OutputStream target;
+
+    @Override
+    public void write(int b) throws IOException {
+      if (target != null) {
+        target.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (target != null) {
+        target.write(b, off, len);
+      }
+    }
+  }
+}
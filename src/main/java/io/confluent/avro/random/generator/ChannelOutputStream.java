@@ -0,0 +1,115 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An output stream that writes to a {@link FileChannel} through a large, reusable direct buffer,
+ * so that output is written with few system calls and without the JDK copying every write into a
+ * temporary native buffer first. Writes larger than the buffer skip it: whatever is buffered and
+ * the new bytes go out together in a single gathering write.
+ *
+ * <p>If the channel is a regular file, it can be extended to an expected size up front, which
+ * lets the file system lay it out in one go; it is truncated to the size actually written when the
+ * stream is closed.
+ */
+class ChannelOutputStream extends OutputStream {
+
+  static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final ByteBuffer[] gather;
+  private final boolean preallocated;
+  private long position;
+
+  /**
+   * @param channel The channel to write to; it is closed along with this stream.
+   * @param bufferSize The size of the buffer, in bytes.
+   * @param preallocate The number of bytes to extend the file to before writing, or 0 to leave it
+   *     as is.
+   * @throws IOException if an error occurs while extending the file.
+   */
+  public ChannelOutputStream(FileChannel channel, int bufferSize, long preallocate)
+      throws IOException {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.gather = new ByteBuffer[] {buffer, null};
+    this.preallocated = preallocate > 0;
+    if (preallocated) {
+      // Writing the last byte extends the file without having to write everything before it
+      channel.write(ByteBuffer.wrap(new byte[1]), preallocate - 1);
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (!buffer.hasRemaining()) {
+      drain();
+    }
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len <= buffer.remaining()) {
+      buffer.put(b, off, len);
+      return;
+    }
+    if (len < buffer.capacity()) {
+      int first = buffer.remaining();
+      buffer.put(b, off, first);
+      drain();
+      buffer.put(b, off + first, len - first);
+      return;
+    }
+    buffer.flip();
+    gather[1] = ByteBuffer.wrap(b, off, len);
+    while (gather[1].hasRemaining()) {
+      position += channel.write(gather);
+    }
+    gather[1] = null;
+    buffer.clear();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    drain();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (FileChannel channel = this.channel) {
+      drain();
+      if (preallocated && channel.size() > position) {
+        channel.truncate(position);
+      }
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
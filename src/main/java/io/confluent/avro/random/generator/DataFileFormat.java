@@ -0,0 +1,108 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * The layout of an Avro object container file that binary-encoded records are written to: the
+ * codec its blocks are compressed with, and the size blocks are written at.
+ *
+ * <p>Compressing blocks is by far the most expensive part of writing a compressed file, so when a
+ * codec is used, blocks are put together and compressed by the workers that generate their
+ * records, each with a {@link DataFileWriter} of its own. All of them share a single sync marker,
+ * which lets the sink simply write the file header and append the finished blocks in order.
+ */
+class DataFileFormat {
+
+  private final String codecName;
+  private final CodecFactory codec;
+  private final int syncInterval;
+  private final byte[] sync;
+
+  /**
+   * @param codecName The name of the codec to compress blocks with, as understood by
+   *     {@link CodecFactory#fromString(String)}.
+   * @param syncInterval The approximate number of uncompressed bytes to write per block.
+   */
+  public DataFileFormat(String codecName, int syncInterval) {
+    this.codecName = codecName;
+    this.codec = CodecFactory.fromString(codecName);
+    this.syncInterval = syncInterval;
+    this.sync = new byte[DataFileConstants.SYNC_SIZE];
+    ThreadLocalRandom.current().nextBytes(sync);
+  }
+
+  /**
+   * @return Creates the encoder used by each worker.
+   */
+  public Supplier<RecordEncoder> encoders() {
+    if (isCompressed()) {
+      return () -> new BlockRecordEncoder(this);
+    } else {
+      return BinaryRecordEncoder::new;
+    }
+  }
+
+  /**
+   * @param schema The schema of the records.
+   * @param output The stream to write the container file to.
+   * @return A sink for the records produced by the encoders from {@link #encoders()}.
+   * @throws IOException if an error occurs while writing the file header.
+   */
+  public RecordSink sink(Schema schema, OutputStream output) throws IOException {
+    if (isCompressed()) {
+      return new DataFileBlockSink(this, schema, output);
+    } else {
+      return new DataFileRecordSink(this, schema, output);
+    }
+  }
+
+  /**
+   * @param schema The schema of the records.
+   * @param output The stream to write to.
+   * @return A writer that has written the header of the container file to the stream.
+   * @throws IOException if an error occurs while writing the file header.
+   */
+  DataFileWriter<Object> createWriter(Schema schema, OutputStream output) throws IOException {
+    return new DataFileWriter<>(new GenericDatumWriter<>(schema))
+        .setCodec(codec)
+        .setSyncInterval(syncInterval)
+        .create(schema, output, sync);
+  }
+
+  /**
+   * @return Whether the records in a batch from {@link #encoders()} can be written apart from each
+   *     other; compressed batches are made up of whole blocks, which can't be split.
+   */
+  boolean hasSeparateRecords() {
+    return !isCompressed();
+  }
+
+  private boolean isCompressed() {
+    return !DataFileConstants.NULL_CODEC.equals(codecName);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes binary-encoded records to an Avro object container file.
+ */
+class DataFileRecordSink implements RecordSink {
+
+  private final DataFileWriter<Object> dataFileWriter;
+
+  public DataFileRecordSink(DataFileFormat format, Schema schema, OutputStream output)
+      throws IOException {
+    this.dataFileWriter = format.createWriter(schema, output);
+  }
+
+  @Override
+  public void write(EncodedRecords records) throws IOException {
+    for (int i = 0; i < records.records(); i++) {
+      dataFileWriter.appendEncoded(records.record(i));
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    // Ends the current block early, so that the records in it can be read right away
+    dataFileWriter.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataFileWriter.close();
+  }
+}
@@ -0,0 +1,180 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable buffer that encoded records are written into back to back, keeping track of where
+ * each of them ends. Unlike {@link java.io.ByteArrayOutputStream}, writes are not synchronized.
+ */
+class EncodedRecords extends OutputStream {
+
+  private static final int INITIAL_CAPACITY = 8192;
+  private static final int INITIAL_RECORDS = 64;
+
+  private byte[] bytes;
+  private ByteBuffer view;
+  private int size;
+  private int[] recordEnds;
+  private int records;
+  private EncodedRecords keys;
+
+  public EncodedRecords() {
+    bytes = new byte[INITIAL_CAPACITY];
+    view = ByteBuffer.wrap(bytes);
+    recordEnds = new int[INITIAL_RECORDS];
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(size + 1);
+    bytes[size++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(size + len);
+    System.arraycopy(b, off, bytes, size, len);
+    size += len;
+  }
+
+  /**
+   * Overwrite four bytes already in the buffer with a big-endian int, such as a length prefix
+   * that is only known once what follows it has been written.
+   * @param index The position of the first of the bytes.
+   * @param value The value to write.
+   */
+  public void putInt(int index, int value) {
+    bytes[index] = (byte) (value >>> 24);
+    bytes[index + 1] = (byte) (value >>> 16);
+    bytes[index + 2] = (byte) (value >>> 8);
+    bytes[index + 3] = (byte) value;
+  }
+
+  /**
+   * Mark everything written since the previous record as a single record.
+   */
+  public void endRecord() {
+    addRecordEnd(size);
+  }
+
+  /**
+   * @return The number of records in the buffer.
+   */
+  public int records() {
+    return records;
+  }
+
+  /**
+   * @return The total number of bytes in the buffer.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param record The index of the record to return.
+   * @return A view of the encoded record; only valid until this method is next called, or until
+   *     the buffer is modified.
+   */
+  public ByteBuffer record(int record) {
+    int start = record == 0 ? 0 : recordEnds[record - 1];
+    view.limit(recordEnds[record]);
+    view.position(start);
+    return view;
+  }
+
+  /**
+   * Write the contents of every record in the buffer to the given stream.
+   * @param out The stream to write to.
+   * @throws IOException if an error occurs while writing to the stream.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    writeTo(out, 0);
+  }
+
+  /**
+   * Write the contents of every record in the buffer to the given stream, leaving out some of the
+   * bytes at the start of the first.
+   * @param out The stream to write to.
+   * @param skip The number of bytes to leave out.
+   * @throws IOException if an error occurs while writing to the stream.
+   */
+  public void writeTo(OutputStream out, int skip) throws IOException {
+    out.write(bytes, skip, size - skip);
+  }
+
+  /**
+   * Copy a range of the records in the buffer, and their keys if there are any, into another
+   * buffer, replacing whatever it held.
+   * @param from The index of the first record to copy.
+   * @param to The index after the last record to copy.
+   * @param target The buffer to copy into.
+   */
+  public void copyTo(int from, int to, EncodedRecords target) {
+    target.reset();
+    int start = from == 0 ? 0 : recordEnds[from - 1];
+    int end = to == 0 ? 0 : recordEnds[to - 1];
+    target.write(bytes, start, end - start);
+    for (int i = from; i < to; i++) {
+      target.addRecordEnd(recordEnds[i] - start);
+    }
+    if (keys != null) {
+      keys.copyTo(from, to, target.keys());
+    }
+  }
+
+  /**
+   * @return A second buffer for the keys of the records in this one, for encodings that write
+   *     keys apart from values; created the first time it is asked for.
+   */
+  public EncodedRecords keys() {
+    if (keys == null) {
+      keys = new EncodedRecords();
+    }
+    return keys;
+  }
+
+  /**
+   * Discard every record in the buffer, and every key, keeping the memory allocated for them.
+   */
+  public void reset() {
+    size = 0;
+    records = 0;
+    if (keys != null) {
+      keys.reset();
+    }
+  }
+
+  private void addRecordEnd(int end) {
+    if (records == recordEnds.length) {
+      recordEnds = Arrays.copyOf(recordEnds, records * 2);
+    }
+    recordEnds[records++] = end;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+      view = ByteBuffer.wrap(bytes);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+
+/**
+ * Flushes another sink whenever a given interval has passed since it was last flushed, so that
+ * records reach the output promptly even when generation runs indefinitely.
+ */
+class FlushingRecordSink implements RecordSink {
+
+  private final RecordSink sink;
+  private final long intervalNanos;
+  private long lastFlush;
+
+  public FlushingRecordSink(RecordSink sink, long intervalNanos) {
+    this.sink = sink;
+    this.intervalNanos = intervalNanos;
+    this.lastFlush = System.nanoTime();
+  }
+
+  @Override
+  public void write(EncodedRecords records) throws IOException {
+    sink.write(records);
+    if (System.nanoTime() - lastFlush >= intervalNanos) {
+      flush();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    sink.flush();
+    lastFlush = System.nanoTime();
+  }
+
+  @Override
+  public void close() throws IOException {
+    sink.close();
+  }
+}
@@ -0,0 +1,138 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The layout of records written as messages, each made of a header identifying the schema the
+ * record was written with, followed by the record in Avro's binary encoding. Two kinds of header
+ * are supported: the Confluent wire format, the way a producer using a schema registry would send
+ * records, is a zero magic byte and the big-endian ID of the schema; Avro's single-object
+ * encoding is the bytes {@code C3 01} and the little-endian CRC-64-AVRO fingerprint of the schema.
+ * Every message is prefixed with its length as a big-endian int, so that the output can be split
+ * back into messages and replayed without decoding them.
+ *
+ * <p>Keys can be generated along with values, and are written to an output of their own, the
+ * n-th key going with the n-th value. So that iterated fields line up between the two, each key
+ * and value are generated together, as the fields of a single record.
+ */
+class FramedFormat {
+
+  static final byte MAGIC_BYTE = 0;
+
+  static final byte[] SINGLE_OBJECT_MARKER = {(byte) 0xC3, (byte) 0x01};
+
+  private static final String KEY_VALUE_NAME = "KeyValue";
+  private static final String KEY_FIELD = "key";
+  private static final String VALUE_FIELD = "value";
+
+  private final byte[] header;
+  private final Schema keySchema;
+  private final byte[] keyHeader;
+
+  private FramedFormat(byte[] header, Schema keySchema, byte[] keyHeader) {
+    this.header = header;
+    this.keySchema = keySchema;
+    this.keyHeader = keyHeader;
+  }
+
+  /**
+   * @param schemaId The schema ID to put in front of values.
+   * @param keySchema The schema to generate keys for, or null to only generate values.
+   * @param keySchemaId The schema ID to put in front of keys.
+   * @return The format of messages in the Confluent wire format.
+   */
+  public static FramedFormat wireFormat(int schemaId, Schema keySchema, int keySchemaId) {
+    return new FramedFormat(wireFormatHeader(schemaId), keySchema, wireFormatHeader(keySchemaId));
+  }
+
+  /**
+   * @param valueSchema The schema to generate values for.
+   * @param keySchema The schema to generate keys for, or null to only generate values.
+   * @return The format of messages in Avro's single-object encoding.
+   */
+  public static FramedFormat singleObject(Schema valueSchema, Schema keySchema) {
+    return new FramedFormat(
+        singleObjectHeader(valueSchema),
+        keySchema,
+        keySchema != null ? singleObjectHeader(keySchema) : null
+    );
+  }
+
+  /**
+   * @param valueSchema The schema to generate values for.
+   * @return The schema to generate records for: the value schema itself if there are no keys,
+   *     and otherwise a record with a key and a value field.
+   */
+  public Schema generatedSchema(Schema valueSchema) {
+    if (keySchema == null) {
+      return valueSchema;
+    }
+    return Schema.createRecord(
+        KEY_VALUE_NAME,
+        null,
+        getClass().getPackage().getName(),
+        false,
+        Arrays.asList(
+            new Schema.Field(KEY_FIELD, keySchema, null, null),
+            new Schema.Field(VALUE_FIELD, valueSchema, null, null)
+        )
+    );
+  }
+
+  /**
+   * @param generatedSchema The schema returned by {@link #generatedSchema(Schema)}.
+   * @return Creates the encoder used by each worker.
+   */
+  public Supplier<RecordEncoder> encoders(Schema generatedSchema) {
+    if (keySchema == null) {
+      return () -> new FramedRecordEncoder(header);
+    } else {
+      Schema valueSchema = generatedSchema.getField(VALUE_FIELD).schema();
+      return () -> new FramedRecordEncoder(header, valueSchema, keyHeader, keySchema);
+    }
+  }
+
+  /**
+   * @param output The stream to write values to.
+   * @param keyOutput The stream to write keys to, or null if there are no keys.
+   * @return A sink for the records produced by the encoders from {@link #encoders(Schema)}.
+   */
+  public RecordSink sink(OutputStream output, OutputStream keyOutput) {
+    return new FramedRecordSink(output, keySchema != null ? keyOutput : null);
+  }
+
+  private static byte[] wireFormatHeader(int schemaId) {
+    return ByteBuffer.allocate(1 + Integer.BYTES).put(MAGIC_BYTE).putInt(schemaId).array();
+  }
+
+  private static byte[] singleObjectHeader(Schema schema) {
+    return ByteBuffer.allocate(SINGLE_OBJECT_MARKER.length + Long.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .put(SINGLE_OBJECT_MARKER)
+        .putLong(SchemaNormalization.parsingFingerprint64(schema))
+        .array();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.IOException;
+
+/**
+ * Encodes records as length-prefixed messages, as laid out by {@link FramedFormat}. The header of
+ * every message is built once up front, with a placeholder for the length that is filled in once
+ * the record behind it has been encoded.
+ */
+class FramedRecordEncoder implements RecordEncoder {
+
+  private static final int LENGTH_SIZE = 4;
+
+  private final byte[] header;
+  private final byte[] keyHeader;
+  private final DatumWriter<Object> valueWriter;
+  private final DatumWriter<Object> keyWriter;
+
+  private BinaryEncoder encoder;
+  private BinaryEncoder keyEncoder;
+  private Object keyValue;
+
+  /**
+   * Encode values only, generated directly to the encoder.
+   * @param header The header to put in front of values.
+   */
+  public FramedRecordEncoder(byte[] header) {
+    this.header = withLength(header);
+    this.keyHeader = null;
+    this.valueWriter = null;
+    this.keyWriter = null;
+  }
+
+  /**
+   * Encode the key and value fields of every record generated as separate messages.
+   * @param header The header to put in front of values.
+   * @param valueSchema The schema of the values.
+   * @param keyHeader The header to put in front of keys.
+   * @param keySchema The schema of the keys.
+   */
+  public FramedRecordEncoder(
+      byte[] header,
+      Schema valueSchema,
+      byte[] keyHeader,
+      Schema keySchema) {
+    this.header = withLength(header);
+    this.keyHeader = withLength(keyHeader);
+    this.valueWriter = new GenericDatumWriter<>(valueSchema);
+    this.keyWriter = new GenericDatumWriter<>(keySchema);
+  }
+
+  @Override
+  public void encode(Generator generator, int count, EncodedRecords records) throws IOException {
+    // EncodedRecords is unsynchronized and in memory, so there is nothing to gain from buffering
+    encoder = EncoderFactory.get().directBinaryEncoder(records, encoder);
+    if (keyWriter == null) {
+      for (int i = 0; i < count; i++) {
+        int start = startMessage(records, header);
+        generator.generateTo(encoder);
+        endMessage(records, start);
+      }
+      return;
+    }
+
+    EncodedRecords keys = records.keys();
+    keyEncoder = EncoderFactory.get().directBinaryEncoder(keys, keyEncoder);
+    for (int i = 0; i < count; i++) {
+      IndexedRecord record = (IndexedRecord) generator.generate(keyValue);
+      keyValue = record;
+      int keyStart = startMessage(keys, keyHeader);
+      keyWriter.write(record.get(0), keyEncoder);
+      endMessage(keys, keyStart);
+      int start = startMessage(records, header);
+      valueWriter.write(record.get(1), encoder);
+      endMessage(records, start);
+    }
+  }
+
+  private static int startMessage(EncodedRecords records, byte[] header) {
+    int start = records.size();
+    records.write(header, 0, header.length);
+    return start;
+  }
+
+  private static void endMessage(EncodedRecords records, int start) {
+    records.putInt(start, records.size() - start - LENGTH_SIZE);
+    records.endRecord();
+  }
+
+  // Leaves room for the length prefix in front of the header
+  private static byte[] withLength(byte[] header) {
+    byte[] result = new byte[LENGTH_SIZE + header.length];
+    System.arraycopy(header, 0, result, LENGTH_SIZE, header.length);
+    return result;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes length-prefixed messages, as produced by a {@link FramedRecordEncoder}, back to back to
+ * a stream, and their keys, if any, to another.
+ */
+class FramedRecordSink implements RecordSink {
+
+  private final OutputStream output;
+  private final OutputStream keyOutput;
+
+  /**
+   * @param output The stream to write values to.
+   * @param keyOutput The stream to write keys to, or null if there are no keys.
+   */
+  public FramedRecordSink(OutputStream output, OutputStream keyOutput) {
+    this.output = output;
+    this.keyOutput = keyOutput;
+  }
+
+  @Override
+  public void write(EncodedRecords records) throws IOException {
+    records.writeTo(output);
+    if (keyOutput != null) {
+      records.keys().writeTo(keyOutput);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+    if (keyOutput != null) {
+      keyOutput.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Closes both streams, even if closing the first one fails
+    try {
+      output.close();
+    } finally {
+      if (keyOutput != null) {
+        keyOutput.close();
+      }
+    }
+  }
+}
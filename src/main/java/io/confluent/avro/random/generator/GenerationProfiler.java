@@ -0,0 +1,182 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounts the time taken and memory allocated to generate the values at each path of a schema,
+ * such as {@code order.items[].sku}. Array elements are reported with a {@code []} suffix, and map
+ * values with a {@code {}} suffix. Costs are inclusive, so a record's cost includes the cost of
+ * its fields. A named schema that is referenced from several places shares a single node in the
+ * generation plan, so it is reported under the path it is first reached by.
+ *
+ * <p>Only one of every {@code samplingInterval} values generated at each path is measured, to keep
+ * the overhead low; the totals are estimated from those samples. A single profiler can be shared
+ * by several {@link Generator generators}, including ones used on different threads.
+ */
+public class GenerationProfiler {
+
+  private final int samplingInterval;
+  private final Map<String, Entry> entries;
+  private final com.sun.management.ThreadMXBean threads;
+  // The number of bytes allocated by looking up the number of bytes allocated
+  private final long allocationOverhead;
+
+  /**
+   * @param samplingInterval How often to measure the generation of a value at each path; 1 measures
+   *     every value, 100 one in every hundred.
+   */
+  public GenerationProfiler(int samplingInterval) {
+    if (samplingInterval < 1) {
+      throw new IllegalArgumentException("samplingInterval must be at least 1");
+    }
+    this.samplingInterval = samplingInterval;
+    this.entries = new LinkedHashMap<>();
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()) {
+      this.threads = (com.sun.management.ThreadMXBean) threads;
+      long id = Thread.currentThread().getId();
+      long before = this.threads.getThreadAllocatedBytes(id);
+      this.allocationOverhead = this.threads.getThreadAllocatedBytes(id) - before;
+    } else {
+      this.threads = null;
+      this.allocationOverhead = 0;
+    }
+  }
+
+  /**
+   * @return How often the generation of a value is measured at each path.
+   */
+  public int samplingInterval() {
+    return samplingInterval;
+  }
+
+  /**
+   * @return Whether the memory allocated while generating values is measured; this depends on
+   *     support from the JVM.
+   */
+  public boolean measuresAllocation() {
+    return threads != null;
+  }
+
+  /**
+   * @return The statistics for every path, in the order the paths were first compiled.
+   */
+  public synchronized Map<String, Entry> entries() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+  }
+
+  synchronized Entry entry(String path) {
+    return entries.computeIfAbsent(path, p -> new Entry());
+  }
+
+  long allocatedBytes() {
+    return threads != null
+        ? threads.getThreadAllocatedBytes(Thread.currentThread().getId())
+        : 0;
+  }
+
+  long allocationOverhead() {
+    return allocationOverhead;
+  }
+
+  /**
+   * Print a table with the statistics for every path.
+   * @param out The stream to print the table to.
+   */
+  public void report(PrintStream out) {
+    Map<String, Entry> entries = entries();
+    int pathWidth = "path".length();
+    for (String path : entries.keySet()) {
+      pathWidth = Math.max(pathWidth, path.length());
+    }
+    String header = "%-" + pathWidth + "s %14s %12s %12s %12s %14s%n";
+    String row = "%-" + pathWidth + "s %14d %12d %12.1f %12.1f %14s%n";
+    out.printf(Locale.ROOT, header, "path", "calls", "sampled", "avg ns", "total ms", "avg bytes");
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      Entry stats = entry.getValue();
+      out.printf(
+          Locale.ROOT,
+          row,
+          entry.getKey(),
+          stats.calls(),
+          stats.samples(),
+          stats.averageNanos(),
+          stats.averageNanos() * stats.calls() / 1e6,
+          measuresAllocation() ? String.format(Locale.ROOT, "%.1f", stats.averageBytes()) : "n/a"
+      );
+    }
+  }
+
+  /**
+   * The statistics for a single path.
+   */
+  public static class Entry {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    void add(long calls, long nanos, long bytes) {
+      this.calls.add(calls);
+      this.samples.increment();
+      this.nanos.add(nanos);
+      this.bytes.add(bytes);
+    }
+
+    /**
+     * @return The number of values generated at the path, up to the most recent sample.
+     */
+    public long calls() {
+      return calls.sum();
+    }
+
+    /**
+     * @return The number of values whose generation was measured.
+     */
+    public long samples() {
+      return samples.sum();
+    }
+
+    /**
+     * @return The average number of nanoseconds taken to generate a measured value.
+     */
+    public double averageNanos() {
+      long samples = samples();
+      return samples > 0 ? (double) nanos.sum() / samples : 0.0;
+    }
+
+    /**
+     * @return The average number of bytes allocated to generate a measured value.
+     */
+    public double averageBytes() {
+      long samples = samples();
+      return samples > 0 ? (double) bytes.sum() / samples : 0.0;
+    }
+  }
+}
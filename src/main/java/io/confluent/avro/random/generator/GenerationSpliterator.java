@@ -0,0 +1,133 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over a range of generated values, backing {@link Generator#stream()}.
+ *
+ * <p>The values are divided into blocks of {@link #BLOCK_SIZE}, and the randomness for each block
+ * comes from its own random source, seeded from the stream's seed and the index of the block.
+ * Splits only ever happen at block boundaries, and every split positions its own
+ * {@link Generator} at the generation its range starts at, so every value is the same no matter
+ * how the range ends up being divided between threads.
+ */
+final class GenerationSpliterator implements Spliterator<Object> {
+
+  static final int BLOCK_SIZE = 1024;
+
+  private final GeneratorTemplate template;
+  private final long seed;
+  private final long generation;
+  private final long limit;
+  private final boolean sized;
+
+  private long position;
+  private Xoroshiro128PlusPlusRandomSource random;
+  private Generator generator;
+
+  /**
+   * @param template The template to build each split's generator from.
+   * @param seed The seed that the random source of each block is derived from.
+   * @param generation The generation of the first value in the stream.
+   * @param count The number of values in the stream, or {@link Long#MAX_VALUE} if it's endless.
+   */
+  public GenerationSpliterator(
+      GeneratorTemplate template,
+      long seed,
+      long generation,
+      long count) {
+    this(template, seed, generation, 0L, count, count != Long.MAX_VALUE);
+  }
+
+  private GenerationSpliterator(
+      GeneratorTemplate template,
+      long seed,
+      long generation,
+      long position,
+      long limit,
+      boolean sized) {
+    this.template = template;
+    this.seed = seed;
+    this.generation = generation;
+    this.position = position;
+    this.limit = limit;
+    this.sized = sized;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Object> action) {
+    if (position >= limit) {
+      return false;
+    }
+    action.accept(next());
+    return true;
+  }
+
+  @Override
+  public void forEachRemaining(Consumer<? super Object> action) {
+    while (position < limit) {
+      action.accept(next());
+    }
+  }
+
+  private Object next() {
+    if (generator == null) {
+      // Ranges that don't already have a generator always start on a block boundary
+      random = new Xoroshiro128PlusPlusRandomSource(blockSeed(position / BLOCK_SIZE));
+      generator = new Generator(template, random, generation + position, null);
+    } else if (position % BLOCK_SIZE == 0) {
+      random.setSeed(blockSeed(position / BLOCK_SIZE));
+    }
+    position++;
+    return generator.generate();
+  }
+
+  private long blockSeed(long block) {
+    return SplitMix64RandomSource.mix(seed + block * SplitMix64RandomSource.GOLDEN_GAMMA);
+  }
+
+  @Override
+  public Spliterator<Object> trySplit() {
+    long start = (position + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    long middle = start + (limit - start) / BLOCK_SIZE / 2 * BLOCK_SIZE;
+    if (middle <= position || middle >= limit) {
+      return null;
+    }
+    GenerationSpliterator prefix =
+        new GenerationSpliterator(template, seed, generation, position, middle, sized);
+    // The prefix picks up exactly where this one left off, possibly in the middle of a block
+    prefix.random = random;
+    prefix.generator = generator;
+    random = null;
+    generator = null;
+    position = middle;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    return limit - position;
+  }
+
+  @Override
+  public int characteristics() {
+    return sized ? ORDERED | SIZED | SUBSIZED : ORDERED;
+  }
+}
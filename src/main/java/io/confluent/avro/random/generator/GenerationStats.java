@@ -0,0 +1,301 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of how many records and bytes have been written, and reports on it periodically
+ * while records are being generated and once more when they're done. Besides throughput, each
+ * report includes the share of time spent writing to the output and in garbage collection, which
+ * shows whether generation and encoding or the output itself is what limits the throughput.
+ *
+ * <p>Counts are updated by every thread writing to a sink, and read by the reporting thread.
+ * The time spent writing is summed across writers, and reported as a share of their total time.
+ */
+class GenerationStats {
+
+  private static final double NANOS_PER_SECOND = 1e9;
+  private static final double BYTES_PER_MIB = 1024.0 * 1024.0;
+
+  private final long iterations;
+  private final PrintStream out;
+  private final List<GarbageCollectorMXBean> collectors;
+
+  private final LongAdder records = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder writeNanos = new LongAdder();
+
+  private long startNanos;
+  private long startGcMillis;
+  private long startGcCount;
+  private long lastNanos;
+  private long lastRecords;
+  private long lastBytes;
+  private ScheduledExecutorService reporter;
+  private ParallelGeneration generation;
+
+  /**
+   * @param iterations The number of records that will be generated, used to estimate the time
+   *     remaining, or a negative value if it isn't known in advance.
+   * @param out The stream to print reports to.
+   */
+  public GenerationStats(long iterations, PrintStream out) {
+    this.iterations = iterations;
+    this.out = out;
+    this.collectors = ManagementFactory.getGarbageCollectorMXBeans();
+  }
+
+  /**
+   * @param output The stream to count the bytes written to.
+   * @return A stream that writes to the given one, counting every byte written.
+   */
+  public OutputStream countBytes(OutputStream output) {
+    return new FilterOutputStream(output) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        bytes.increment();
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        bytes.add(len);
+      }
+    };
+  }
+
+  /**
+   * @param sink The sink to count the records written to.
+   * @return A sink that writes to the given one, counting every record written and the time it
+   *     takes to write them.
+   */
+  public RecordSink countRecords(RecordSink sink) {
+    return new RecordSink() {
+      @Override
+      public void write(EncodedRecords encodedRecords) throws IOException {
+        long start = System.nanoTime();
+        sink.write(encodedRecords);
+        writeNanos.add(System.nanoTime() - start);
+        records.add(encodedRecords.records());
+      }
+
+      @Override
+      public void flush() throws IOException {
+        long start = System.nanoTime();
+        sink.flush();
+        writeNanos.add(System.nanoTime() - start);
+      }
+
+      @Override
+      public void close() throws IOException {
+        long start = System.nanoTime();
+        sink.close();
+        writeNanos.add(System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * Also report how records are flowing from the workers of the given generation to the writers.
+   * @param generation The generation to report on.
+   */
+  public void watch(ParallelGeneration generation) {
+    this.generation = generation;
+  }
+
+  /**
+   * Start the clock, and print a progress report at the given interval until {@link #finish}.
+   * @param intervalMillis The time between progress reports, in milliseconds.
+   */
+  public void start(long intervalMillis) {
+    startNanos = System.nanoTime();
+    lastNanos = startNanos;
+    startGcMillis = gcMillis();
+    startGcCount = gcCount();
+    reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, Main.PROGRAM_NAME + "-stats");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reporter.scheduleAtFixedRate(
+        this::reportProgress,
+        intervalMillis,
+        intervalMillis,
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  /**
+   * Stop printing progress reports, and print a summary of the whole run.
+   * @param json Whether to print the summary as a single JSON object instead of text.
+   */
+  public void finish(boolean json) {
+    reporter.shutdownNow();
+    long nanos = System.nanoTime() - startNanos;
+    double seconds = nanos / NANOS_PER_SECOND;
+    long records = this.records.sum();
+    long bytes = this.bytes.sum();
+    double writeSeconds = writeNanos.sum() / NANOS_PER_SECOND;
+    double gcSeconds = (gcMillis() - startGcMillis) / 1000.0;
+    long gcCount = gcCount() - startGcCount;
+    if (json) {
+      String pipeline = "";
+      if (generation != null) {
+        pipeline = String.format(
+            Locale.ROOT,
+            ",\"writerWaitSeconds\":%.3f,\"workerWaitSeconds\":%.3f",
+            generation.writerWaitNanos() / NANOS_PER_SECOND,
+            generation.workerWaitNanos() / NANOS_PER_SECOND
+        );
+      }
+      out.printf(
+          Locale.ROOT,
+          "{\"records\":%d,\"bytes\":%d,\"elapsedSeconds\":%.3f,\"recordsPerSecond\":%.1f,"
+              + "\"bytesPerSecond\":%.1f,\"writeSeconds\":%.3f,\"gcSeconds\":%.3f,"
+              + "\"gcCollections\":%d%s}%n",
+          records,
+          bytes,
+          seconds,
+          rate(records, nanos),
+          rate(bytes, nanos),
+          writeSeconds,
+          gcSeconds,
+          gcCount,
+          pipeline
+      );
+    } else {
+      out.printf(
+          Locale.ROOT,
+          "%s: wrote %d records (%.1f MiB) in %.3f s: %.0f records/s, %.1f MiB/s;"
+              + " %.1f%% of the time spent writing, %.1f%% in GC (%d collections)%n",
+          Main.PROGRAM_NAME,
+          records,
+          bytes / BYTES_PER_MIB,
+          seconds,
+          rate(records, nanos),
+          rate(bytes, nanos) / BYTES_PER_MIB,
+          percentage(writeSeconds, seconds * writers()),
+          percentage(gcSeconds, seconds),
+          gcCount
+      );
+      if (generation != null) {
+        out.printf(
+            Locale.ROOT,
+            "%s: writers spent %.1f%% of the time waiting for records, and workers %.1f%%"
+                + " waiting for writers%n",
+            Main.PROGRAM_NAME,
+            percentage(generation.writerWaitNanos(), (double) nanos * generation.writers()),
+            percentage(generation.workerWaitNanos(), (double) nanos * generation.threads())
+        );
+      }
+    }
+  }
+
+  private void reportProgress() {
+    long now = System.nanoTime();
+    long records = this.records.sum();
+    long bytes = this.bytes.sum();
+    long elapsed = now - startNanos;
+    double elapsedSeconds = elapsed / NANOS_PER_SECOND;
+
+    // Rates are for the last interval only; the time remaining is based on the overall rate
+    String remaining = "unknown";
+    if (records > 0 && iterations >= records) {
+      remaining = formatDuration((long) ((iterations - records) * (double) elapsed / records));
+    }
+    out.printf(
+        Locale.ROOT,
+        "%s: %d records, %.0f records/s, %.1f MiB, %.1f MiB/s, elapsed %s, ETA %s,"
+            + " writing %.1f%%, GC %.1f%%%n",
+        Main.PROGRAM_NAME,
+        records,
+        rate(records - lastRecords, now - lastNanos),
+        bytes / BYTES_PER_MIB,
+        rate(bytes - lastBytes, now - lastNanos) / BYTES_PER_MIB,
+        formatDuration(elapsed),
+        remaining,
+        percentage(writeNanos.sum() / NANOS_PER_SECOND, elapsedSeconds * writers()),
+        percentage((gcMillis() - startGcMillis) / 1000.0, elapsedSeconds)
+    );
+    if (generation != null) {
+      out.printf(
+          Locale.ROOT,
+          "%s: %d chunks queued, writers waiting %.1f%%, workers waiting %.1f%%%n",
+          Main.PROGRAM_NAME,
+          generation.queuedChunks(),
+          percentage(generation.writerWaitNanos(), (double) elapsed * generation.writers()),
+          percentage(generation.workerWaitNanos(), (double) elapsed * generation.threads())
+      );
+    }
+    lastNanos = now;
+    lastRecords = records;
+    lastBytes = bytes;
+  }
+
+  private int writers() {
+    return generation != null ? generation.writers() : 1;
+  }
+
+  private long gcMillis() {
+    long result = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      // Collectors that don't keep track of it report -1
+      result += Math.max(collector.getCollectionTime(), 0);
+    }
+    return result;
+  }
+
+  private long gcCount() {
+    long result = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      result += Math.max(collector.getCollectionCount(), 0);
+    }
+    return result;
+  }
+
+  private static double rate(long amount, long nanos) {
+    return nanos > 0 ? amount * NANOS_PER_SECOND / nanos : 0.0;
+  }
+
+  private static double percentage(double part, double whole) {
+    return whole > 0 ? 100.0 * part / whole : 0.0;
+  }
+
+  private static String formatDuration(long nanos) {
+    long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+    return String.format(
+        Locale.ROOT,
+        "%d:%02d:%02d",
+        seconds / 3600,
+        seconds / 60 % 60,
+        seconds % 60
+    );
+  }
+}
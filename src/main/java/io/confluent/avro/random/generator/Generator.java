@@ -16,8 +16,6 @@
 
 package io.confluent.avro.random.generator;
 
-import com.mifmif.common.regex.Generex;
-
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import org.apache.avro.LogicalType;
@@ -26,14 +24,20 @@ import org.apache.avro.Schema;
 
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericEnumSymbol;
 import org.apache.avro.generic.GenericFixed;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
 
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.util.Utf8;
 
 import java.io.EOFException;
 import java.io.File;
@@ -46,28 +50,37 @@ import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Generates Java objects according to an {@link Schema Avro Schema}.
+ *
+ * <p>A generator must only be used from one thread at a time. To generate values on several
+ * threads, compile the schema into a {@link GeneratorTemplate} once and build a generator from it
+ * for each thread with {@link Builder#template(GeneratorTemplate)}; those generators share
+ * everything parsed out of the schema, and only hold their own random source and iterators.
  */
 @SuppressWarnings("WeakerAccess")
 public class Generator {
 
-  private final Map<Schema, Generex> generexCache = new HashMap<>();
-  private final Map<Schema, List<Object>> optionsCache = new HashMap<>();
-  private final Map<Schema, Iterator<Object>> iteratorCache = new IdentityHashMap<>();
+  private final Map<Schema, Node> compiledNodes = new IdentityHashMap<>();
+  private final List<IterationNode<?>> iterationNodes = new ArrayList<>();
 
   /**
    * The name to use for the top-level JSON property when specifying ARG-specific attributes.
@@ -129,6 +142,25 @@ public class Generator {
    * given as a string.
    */
   public static final String OPTIONS_PROP_ENCODING = "encoding";
+  /**
+   * Whether the options file holds weighted options; if true, each of its values must be a record
+   * with an "option" field holding the option and a "weight" field holding its (double) weight.
+   * Must be given as a boolean.
+   */
+  public static final String OPTIONS_PROP_WEIGHTED = "weighted";
+  /**
+   * Whether to memory-map the options file instead of reading all of its options onto the heap;
+   * only supported for the "binary" encoding. Mapped options are only decoded once they're chosen,
+   * and are copied into binary output without being decoded at all. Must be given as a boolean.
+   */
+  public static final String OPTIONS_PROP_MAPPED = "mapped";
+
+  /**
+   * The name of the attribute for specifying how often each of the values in an
+   * {@link #OPTIONS_PROP} array should be chosen, relative to the others. Must be given as an array
+   * of non-negative numbers with one weight per option.
+   */
+  public static final String WEIGHTS_PROP = "weights";
 
   /**
    * The name of the attribute for specifying special properties for keys in map schemas. Since
@@ -197,10 +229,18 @@ public class Generator {
   public static final String ITERATION_PROP_INITIAL = "initial";
 
   static final String DECIMAL_LOGICAL_TYPE_NAME = "decimal";
+  private static final String WEIGHTED_OPTION_OPTION_FIELD = "option";
+  private static final String WEIGHTED_OPTION_WEIGHT_FIELD = "weight";
 
+  private final GeneratorTemplate template;
   private final Schema topLevelSchema;
-  private final Random random;
+  private final RandomSource random;
   private final long generation;
+  private final GenerationProfiler profiler;
+  private final Node plan;
+
+  // The schema path of the node being compiled, used to label profiled nodes
+  private String compilePath;
 
   /**
    * Creates a generator out of an already-parsed {@link Schema}.
@@ -213,9 +253,32 @@ public class Generator {
   }
 
   protected Generator(Schema topLevelSchema, Random random, long generation) {
-    this.topLevelSchema = topLevelSchema;
+    this(topLevelSchema, RandomSource.of(random), generation);
+  }
+
+  protected Generator(Schema topLevelSchema, RandomSource random, long generation) {
+    this(topLevelSchema, random, generation, null);
+  }
+
+  protected Generator(
+      Schema topLevelSchema,
+      RandomSource random,
+      long generation,
+      GenerationProfiler profiler) {
+    this(new GeneratorTemplate(topLevelSchema), random, generation, profiler);
+  }
+
+  Generator(
+      GeneratorTemplate template,
+      RandomSource random,
+      long generation,
+      GenerationProfiler profiler) {
+    this.template = template;
+    this.topLevelSchema = template.schema();
     this.random = random;
     this.generation = generation;
+    this.profiler = profiler;
+    this.plan = compile(topLevelSchema, topLevelSchema.getName());
   }
 
   /**
@@ -253,38 +316,61 @@ public class Generator {
   public static class Builder {
 
     private Schema topLevelSchema;
-    private Random random;
+    private GeneratorTemplate template;
+    private RandomSource random;
     private long generation;
+    private GenerationProfiler profiler;
     private Schema.Parser parser;
 
     public Builder() {
       parser = new Schema.Parser();
-      random = new Random();
+      random = RandomSource.create();
       generation = 0L;
     }
 
     public Builder schema(Schema schema) {
       topLevelSchema = schema;
+      template = null;
       return this;
     }
 
     public Builder schemaFile(File schemaFile) throws IOException {
       topLevelSchema = parser.parse(schemaFile);
+      template = null;
       return this;
     }
 
     public Builder schemaStream(InputStream schemaStream) throws IOException {
       topLevelSchema = parser.parse(schemaStream);
+      template = null;
       return this;
     }
 
     public Builder schemaString(String schemaString) {
       topLevelSchema = parser.parse(schemaString);
+      template = null;
+      return this;
+    }
+
+    /**
+     * Generate values for the schema of a template, sharing everything the template has already
+     * parsed instead of parsing it again.
+     * @param template The template to build the generator from.
+     * @return This builder.
+     */
+    public Builder template(GeneratorTemplate template) {
+      topLevelSchema = template.schema();
+      this.template = template;
       return this;
     }
 
     public Builder random(Random random) {
-      this.random = random;
+      this.random = RandomSource.of(random);
+      return this;
+    }
+
+    public Builder randomSource(RandomSource randomSource) {
+      this.random = randomSource;
       return this;
     }
 
@@ -293,8 +379,31 @@ public class Generator {
       return this;
     }
 
+    /**
+     * Measure the cost of generating the values at each path of the schema. Profiling is off by
+     * default; it doesn't affect the values generated.
+     * @param profiler The profiler to account the costs to.
+     * @return This builder.
+     */
+    public Builder profiler(GenerationProfiler profiler) {
+      this.profiler = profiler;
+      return this;
+    }
+
     public Generator build() {
-      return new Generator(topLevelSchema, random, generation);
+      if (template == null) {
+        return new Generator(topLevelSchema, random, generation, profiler);
+      }
+      return new Generator(template, random, generation, profiler);
+    }
+
+    /**
+     * Compile the schema into a template that generators can be built from on any number of
+     * threads; the random source, generation and profiler are given to each of those instead.
+     * @return The compiled template.
+     */
+    public GeneratorTemplate buildTemplate() {
+      return template != null ? template : GeneratorTemplate.compile(topLevelSchema);
     }
   }
 
@@ -364,46 +473,177 @@ public class Generator {
    * </table>
    */
   public Object generate() {
-    return generateObject(topLevelSchema);
+    return plan.generate();
+  }
+
+  /**
+   * Generate a value like {@link #generate()} does, but reuse the given object (typically one
+   * returned by a previous call) wherever possible, mirroring the convention of
+   * {@link DatumReader#read(Object, Decoder)}: records are refilled in place, arrays and maps are
+   * cleared and refilled, and byte buffers and fixed values are overwritten if they're large
+   * enough. Anything that can't be reused is allocated as usual. For the same random values, the
+   * result is equal to the one {@link #generate()} would return.
+   * @param reuse The object to reuse, or null.
+   * @return The generated value, which may be {@code reuse} itself.
+   */
+  public Object generate(Object reuse) {
+    return plan.generate(reuse);
+  }
+
+  /**
+   * Generate several values at once; equivalent to calling {@link #generate()} that many times.
+   * @param count The number of values to generate.
+   * @return The generated values, in the order they were generated.
+   */
+  public Object[] generateBatch(int count) {
+    return generateBatch(new Object[count]);
+  }
+
+  /**
+   * Generate a value for every slot of the given array, in order. Values already in the array are
+   * reused as {@link #generate(Object)} would, so passing the same array in batch after batch
+   * avoids most allocation.
+   * @param into The array to fill.
+   * @return The given array.
+   */
+  public Object[] generateBatch(Object[] into) {
+    Node root = plan;
+    for (int i = 0; i < into.length; i++) {
+      into[i] = root.generate(into[i]);
+    }
+    return into;
+  }
+
+  /**
+   * Generate an endless stream of values, like {@link #stream(long)} does.
+   * @return The stream of values.
+   */
+  public Stream<Object> stream() {
+    return StreamSupport.stream(
+        new GenerationSpliterator(template, random.nextLong(), generation, Long.MAX_VALUE),
+        false
+    );
+  }
+
+  /**
+   * Generate a stream of values that can be split up across threads without changing them. The
+   * stream draws a single seed from this generator and produces its values with generators of its
+   * own, starting from the generation this generator was built with; a parallel stream therefore
+   * produces exactly the same values, in the same order, as a sequential one with the same seed.
+   * @param count The number of values in the stream.
+   * @return The stream of values.
+   */
+  public Stream<Object> stream(long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative");
+    }
+    return StreamSupport.stream(
+        new GenerationSpliterator(template, random.nextLong(), generation, count),
+        false
+    );
+  }
+
+  /**
+   * Move every iterating value to the position it would be in if this generator had been built
+   * with {@link Builder#generation(long)} set to the given generation, without having to compile
+   * the schema again. Values that are not iterated over are unaffected.
+   * @param generation The number of values that are taken to have been generated previously.
+   */
+  void seek(long generation) {
+    for (IterationNode<?> iterationNode : iterationNodes) {
+      iterationNode.seek(generation);
+    }
+  }
+
+  /**
+   * Generate a value that matches the given schema and its specified properties, and write it
+   * directly to an {@link Encoder} in schema order, without first building the Java object that
+   * {@link #generate()} would return. For the same random values, the written datum is the same
+   * one that {@link #generate()} would produce.
+   * @param encoder The encoder to write the generated value to.
+   * @throws IOException if an error occurs while writing to the encoder.
+   */
+  public void generateTo(Encoder encoder) throws IOException {
+    plan.write(encoder);
+  }
+
+  /*
+    Schemas are compiled into a tree of nodes once, when the generator is created, so that all
+    property lookup, parsing, and validation happens up front and generating a value is only a
+    matter of walking the tree. Nodes are memoized by schema identity; this way a named schema that
+    is referenced from several places shares a single node (and, with it, a single iterator), and
+    recursive schemas compile to a cyclic tree instead of recursing forever.
+   */
+  private Node compile(Schema schema) {
+    Node result = compiledNodes.get(schema);
+    if (result == null) {
+      result = compileObject(schema);
+      compiledNodes.put(schema, result);
+    }
+    return result;
+  }
+
+  // Compiles the schema found at the given path; when profiling, the node is wrapped so that the
+  // cost of generating its values is accounted to that path
+  private Node compile(Schema schema, String path) {
+    if (profiler == null) {
+      return compile(schema);
+    }
+    String parentPath = compilePath;
+    compilePath = path;
+    try {
+      return new ProfiledNode(profiler.entry(path), compile(schema));
+    } finally {
+      compilePath = parentPath;
+    }
   }
 
-  private Object generateObject(Schema schema) {
+  private Node compileObject(Schema schema) {
     Map propertiesProp = getProperties(schema).orElse(Collections.emptyMap());
     if (propertiesProp.containsKey(OPTIONS_PROP)) {
-      return generateOption(schema, propertiesProp);
+      return compileOptions(schema, getOptions(schema, propertiesProp));
+    }
+    if (propertiesProp.containsKey(WEIGHTS_PROP)) {
+      throw new RuntimeException(String.format(
+          "Cannot specify %s prop without %s prop",
+          WEIGHTS_PROP,
+          OPTIONS_PROP
+      ));
     }
     if (propertiesProp.containsKey(ITERATION_PROP)) {
-      return generateIteration(schema, propertiesProp);
+      IterationNode<?> result = compileIteration(schema, propertiesProp);
+      iterationNodes.add(result);
+      return result;
     }
     switch (schema.getType()) {
       case ARRAY:
-        return generateArray(schema, propertiesProp);
+        return compileArray(schema, propertiesProp);
       case BOOLEAN:
-        return generateBoolean(propertiesProp);
+        return compileBoolean(propertiesProp);
       case BYTES:
-        return generateBytes(schema, propertiesProp);
+        return compileBytes(schema, propertiesProp);
       case DOUBLE:
-        return generateDouble(propertiesProp);
+        return compileDouble(propertiesProp);
       case ENUM:
-        return generateEnumSymbol(schema);
+        return new EnumNode(schema);
       case FIXED:
-        return generateFixed(schema);
+        return compileFixed(schema);
       case FLOAT:
-        return generateFloat(propertiesProp);
+        return compileFloat(propertiesProp);
       case INT:
-        return generateInt(propertiesProp);
+        return compileInt(propertiesProp);
       case LONG:
-        return generateLong(propertiesProp);
+        return compileLong(propertiesProp);
       case MAP:
-        return generateMap(schema, propertiesProp);
+        return compileMap(schema, propertiesProp);
       case NULL:
-        return generateNull();
+        return new NullNode();
       case RECORD:
-        return generateRecord(schema);
+        return compileRecord(schema);
       case STRING:
-        return generateString(schema, propertiesProp);
+        return compileString(propertiesProp);
       case UNION:
-        return generateUnion(schema);
+        return compileUnion(schema);
       default:
         throw new RuntimeException("Unrecognized schema type: " + schema.getType());
     }
@@ -483,7 +723,7 @@ public class Generator {
   }
 
   @SuppressWarnings("unchecked")
-  private List<Object> parseOptions(Schema schema, Map propertiesProp) {
+  private Options parseOptions(Schema schema, Map propertiesProp) {
     enforceMutualExclusion(
         propertiesProp, OPTIONS_PROP,
         LENGTH_PROP, REGEX_PROP, ITERATION_PROP, RANGE_PROP
@@ -511,7 +751,7 @@ public class Generator {
         }
         options.add(option);
       }
-      return options;
+      return new Options(options, parseWeights(propertiesProp, options.size()));
     } else if (optionsProp instanceof Map) {
       Map optionsProps = (Map) optionsProp;
       Object optionsFile = optionsProps.get(OPTIONS_PROP_FILE);
@@ -546,13 +786,44 @@ public class Generator {
             optionsEncoding.getClass().getName()
         ));
       }
+      Object optionsWeighted = optionsProps.getOrDefault(OPTIONS_PROP_WEIGHTED, false);
+      if (!(optionsWeighted instanceof Boolean)) {
+        throw new RuntimeException(String.format(
+            "'%s' field of %s property must be given as boolean, was %s instead",
+            OPTIONS_PROP_WEIGHTED,
+            OPTIONS_PROP,
+            optionsWeighted.getClass().getName()
+        ));
+      }
+      boolean weighted = (Boolean) optionsWeighted;
+      if (weighted && propertiesProp.containsKey(WEIGHTS_PROP)) {
+        throw new RuntimeException(String.format(
+            "Cannot specify %s prop when '%s' field of %s property is true",
+            WEIGHTS_PROP,
+            OPTIONS_PROP_WEIGHTED,
+            OPTIONS_PROP
+        ));
+      }
+      Object optionsMapped = optionsProps.getOrDefault(OPTIONS_PROP_MAPPED, false);
+      if (!(optionsMapped instanceof Boolean)) {
+        throw new RuntimeException(String.format(
+            "'%s' field of %s property must be given as boolean, was %s instead",
+            OPTIONS_PROP_MAPPED,
+            OPTIONS_PROP,
+            optionsMapped.getClass().getName()
+        ));
+      }
+      if ((Boolean) optionsMapped) {
+        return mapOptions(schema, propertiesProp, (String) optionsFile, optionsEncoding, weighted);
+      }
+      Schema fileSchema = weighted ? getWeightedOptionSchema(schema) : schema;
       try (InputStream optionsStream = new FileInputStream((String) optionsFile)) {
-        DatumReader<Object> optionReader = new GenericDatumReader(schema);
+        DatumReader<Object> optionReader = new GenericDatumReader(fileSchema);
         Decoder decoder;
         if ("binary".equals(optionsEncoding)) {
           decoder = DecoderFactory.get().binaryDecoder(optionsStream, null);
         } else if ("json".equals(optionsEncoding)) {
-          decoder = DecoderFactory.get().jsonDecoder(schema, optionsStream);
+          decoder = DecoderFactory.get().jsonDecoder(fileSchema, optionsStream);
         } else {
           throw new RuntimeException(String.format(
               "'%s' field of %s property only supports two formats: 'binary' and 'json'",
@@ -561,8 +832,14 @@ public class Generator {
           ));
         }
         List<Object> options = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
         Object option = optionReader.read(null, decoder);
         while (option != null) {
+          if (weighted) {
+            GenericRecord weightedOption = (GenericRecord) option;
+            weights.add((Double) weightedOption.get(WEIGHTED_OPTION_WEIGHT_FIELD));
+            option = weightedOption.get(WEIGHTED_OPTION_OPTION_FIELD);
+          }
           option = wrapOption(schema, option);
           if (!GenericData.get().validate(schema, option)) {
             throw new RuntimeException(String.format(
@@ -579,7 +856,14 @@ public class Generator {
             break;
           }
         }
-        return options;
+        if (!weighted) {
+          return new Options(options, parseWeights(propertiesProp, options.size()));
+        }
+        double[] weightArray = new double[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+          weightArray[i] = weights.get(i);
+        }
+        return new Options(options, checkWeights(weightArray));
       } catch (FileNotFoundException fnfe) {
         throw new RuntimeException(
             String.format(
@@ -606,16 +890,136 @@ public class Generator {
     }
   }
 
-  @SuppressWarnings("unchecked")
-  private <T> T generateOption(Schema schema, Map propertiesProp) {
-    if (!optionsCache.containsKey(schema)) {
-      optionsCache.put(schema, parseOptions(schema, propertiesProp));
+  private Options mapOptions(
+      Schema schema,
+      Map propertiesProp,
+      String optionsFile,
+      Object optionsEncoding,
+      boolean weighted) {
+    if (!"binary".equals(optionsEncoding)) {
+      throw new RuntimeException(String.format(
+          "'%s' field of %s property can only be true when '%s' field is 'binary'",
+          OPTIONS_PROP_MAPPED,
+          OPTIONS_PROP,
+          OPTIONS_PROP_ENCODING
+      ));
     }
-    List<Object> options = optionsCache.get(schema);
-    return (T) options.get(random.nextInt(options.size()));
+    MappedOptions options;
+    try {
+      options = MappedOptions.map(new File(optionsFile), schema, weighted);
+    } catch (NoSuchFileException nsfe) {
+      throw new RuntimeException(
+          String.format(
+              "Unable to locate options file '%s'",
+              optionsFile
+          ),
+          nsfe
+      );
+    } catch (IOException ioe) {
+      throw new RuntimeException(
+          String.format(
+              "Unable to read options file '%s'",
+              optionsFile
+          ),
+          ioe
+      );
+    }
+    double[] weights = weighted
+        ? checkWeights(options.weights())
+        : parseWeights(propertiesProp, options.size());
+    return new Options(options, weights);
   }
 
-  private Iterator<Object> getBooleanIterator(Map iterationProps) {
+  private Node compileOptions(Schema schema, Options options) {
+    if (options.mapped != null) {
+      return new MappedOptionNode(schema, options);
+    }
+    return new OptionNode(schema, options);
+  }
+
+  private static Schema getWeightedOptionSchema(Schema optionSchema) {
+    return Schema.createRecord(
+        "weighted_option",
+        null,
+        null,
+        false,
+        Arrays.asList(
+            new Schema.Field(WEIGHTED_OPTION_OPTION_FIELD, optionSchema, null, null),
+            new Schema.Field(
+                WEIGHTED_OPTION_WEIGHT_FIELD,
+                Schema.create(Schema.Type.DOUBLE),
+                null,
+                null
+            )
+        )
+    );
+  }
+
+  // Returns null if no weights are given, in which case every option is equally likely
+  private double[] parseWeights(Map propertiesProp, int optionCount) {
+    Object weightsProp = propertiesProp.get(WEIGHTS_PROP);
+    if (weightsProp == null) {
+      return null;
+    }
+    if (!(weightsProp instanceof Collection)) {
+      throw new RuntimeException(String.format(
+          "%s prop must be an array, was %s instead",
+          WEIGHTS_PROP,
+          weightsProp.getClass().getName()
+      ));
+    }
+    Collection weightsList = (Collection) weightsProp;
+    if (weightsList.size() != optionCount) {
+      throw new RuntimeException(String.format(
+          "%s prop must have one weight per option; found %d weights for %d options",
+          WEIGHTS_PROP,
+          weightsList.size(),
+          optionCount
+      ));
+    }
+    double[] weights = new double[optionCount];
+    int i = 0;
+    for (Object weight : weightsList) {
+      if (!(weight instanceof Number)) {
+        throw new RuntimeException(String.format(
+            "%s prop must only contain numbers, found %s instead",
+            WEIGHTS_PROP,
+            weight == null ? "null" : weight.getClass().getName()
+        ));
+      }
+      weights[i++] = ((Number) weight).doubleValue();
+    }
+    return checkWeights(weights);
+  }
+
+  private static double[] checkWeights(double[] weights) {
+    double total = 0;
+    for (double weight : weights) {
+      if (!(weight >= 0) || Double.isInfinite(weight)) {
+        throw new RuntimeException(String.format(
+            "Option weights must be finite and non-negative, found %s",
+            weight
+        ));
+      }
+      total += weight;
+    }
+    if (!(total > 0)) {
+      throw new RuntimeException("At least one option weight must be positive");
+    }
+    return weights;
+  }
+
+  private Options getOptions(Schema schema, Map propertiesProp) {
+    return getOptions(schema, schema, propertiesProp);
+  }
+
+  // Options are shared by the schema whose properties list them; for the keys of a map, that is the
+  // map's schema rather than the string schema of the options
+  private Options getOptions(Schema owner, Schema schema, Map propertiesProp) {
+    return template.options.computeIfAbsent(owner, key -> parseOptions(schema, propertiesProp));
+  }
+
+  private LongFunction<Iterator<Object>> getBooleanIterator(Map iterationProps) {
     Object startProp = iterationProps.get(ITERATION_PROP_START);
     if (startProp == null) {
       throw new RuntimeException(String.format(
@@ -649,10 +1053,11 @@ public class Generator {
 
     // If an odd number of records have been generated previously, then the boolean will have
     // changed state effectively once, and so the start state should be inverted.
-    return new BooleanIterator((generation % 2 == 1) ^ ((Boolean) startProp));
+    boolean start = (Boolean) startProp;
+    return generation -> new BooleanIterator((generation % 2 == 1) ^ start);
   }
 
-  private Iterator<Object> getIntegralIterator(
+  private LongFunction<IntegralIterator> getIntegralIterator(
       Long iterationStartField,
       Long iterationRestartField,
       Long iterationStepField,
@@ -762,17 +1167,14 @@ public class Generator {
       iterationInitial = iterationInitialField;
     }
 
-    return new IntegralIterator(
-        iterationStart,
-        iterationRestart,
-        iterationStep,
-        iterationInitial,
-        generation,
-        type
-    );
+    final long start = iterationStart;
+    final long restart = iterationRestart;
+    final long step = iterationStep;
+    final long initial = iterationInitial;
+    return generation -> IntegralIterator.create(start, restart, step, initial, generation, type);
   }
 
-  private Iterator<Object> getDecimalIterator(
+  private LongFunction<DecimalIterator> getDecimalIterator(
       Double iterationStartField,
       Double iterationRestartField,
       Double iterationStepField,
@@ -882,17 +1284,14 @@ public class Generator {
       iterationInitial = iterationInitialField;
     }
 
-    return new DecimalIterator(
-        iterationStart,
-        iterationRestart,
-        iterationStep,
-        iterationInitial,
-        generation,
-        type
-    );
+    final double start = iterationStart;
+    final double restart = iterationRestart;
+    final double step = iterationStep;
+    final double initial = iterationInitial;
+    return generation -> new DecimalIterator(start, restart, step, initial, generation, type);
   }
 
-  private Iterator<Object> parseIterations(Schema schema, Map propertiesProp) {
+  private IterationNode<?> compileIteration(Schema schema, Map propertiesProp) {
     enforceMutualExclusion(
         propertiesProp, ITERATION_PROP,
         LENGTH_PROP, REGEX_PROP, OPTIONS_PROP, RANGE_PROP
@@ -908,19 +1307,24 @@ public class Generator {
     }
 
     Map iterationProps = (Map) iterationProp;
-    switch (schema.getType()) {
+    Schema.Type type = schema.getType();
+    switch (type) {
       case BOOLEAN:
-        return getBooleanIterator(iterationProps);
+        return new IterationNode<>(type, getBooleanIterator(iterationProps));
       case INT:
-        return getIntegerIterator(iterationProps);
+        return new IntegralIterationNode(type, getIntegerIterator(iterationProps));
       case LONG:
-        return getLongIterator(iterationProps);
+        return new IntegralIterationNode(type, getLongIterator(iterationProps));
       case FLOAT:
-        return getFloatIterator(iterationProps);
+        return new DecimalIterationNode(type, getFloatIterator(iterationProps));
       case DOUBLE:
-        return getDoubleIterator(iterationProps);
+        return new DecimalIterationNode(type, getDoubleIterator(iterationProps));
       case STRING:
-        return createStringIterator(getIntegerIterator(iterationProps), propertiesProp);
+        return new IterationNode<>(type, createStringIterator(
+            getIntegerIterator(iterationProps),
+            getStringField(PREFIX_PROP, propertiesProp),
+            getStringField(SUFFIX_PROP, propertiesProp)
+        ));
       default:
         throw new UnsupportedOperationException(String.format(
             "%s property can only be specified on numeric, boolean or string schemas, "
@@ -931,7 +1335,7 @@ public class Generator {
     }
   }
 
-  private Iterator<Object> getDoubleIterator(final Map iterationProps) {
+  private LongFunction<DecimalIterator> getDoubleIterator(final Map iterationProps) {
     Double iterationStartField = getDecimalNumberField(
         ITERATION_PROP,
         ITERATION_PROP_START,
@@ -961,7 +1365,7 @@ public class Generator {
     );
   }
 
-  private Iterator<Object> getFloatIterator(final Map iterationProps) {
+  private LongFunction<DecimalIterator> getFloatIterator(final Map iterationProps) {
     Float iterationStartField = getFloatNumberField(
         ITERATION_PROP,
         ITERATION_PROP_START,
@@ -991,7 +1395,7 @@ public class Generator {
     );
   }
 
-  private Iterator<Object> getLongIterator(final Map iterationProps) {
+  private LongFunction<IntegralIterator> getLongIterator(final Map iterationProps) {
     Long iterationStartField = getIntegralNumberField(
         ITERATION_PROP,
         ITERATION_PROP_START,
@@ -1021,7 +1425,17 @@ public class Generator {
     );
   }
 
-  private Iterator<Object> createStringIterator(Iterator<Object> inner, Map propertiesProp) {
+  private LongFunction<Iterator<Object>> createStringIterator(
+      LongFunction<IntegralIterator> innerIterators,
+      String prefix,
+      String suffix) {
+    return generation -> createStringIterator(innerIterators.apply(generation), prefix, suffix);
+  }
+
+  private Iterator<Object> createStringIterator(
+      IntegralIterator inner,
+      String prefix,
+      String suffix) {
     return new Iterator<Object>() {
       @Override
       public boolean hasNext() {
@@ -1030,12 +1444,12 @@ public class Generator {
 
       @Override
       public Object next() {
-        return prefixAndSuffixString(inner.next().toString(), propertiesProp);
+        return affix(prefix, Long.toString(inner.nextLong()), suffix);
       }
     };
   }
 
-  private Iterator<Object> getIntegerIterator(Map iterationProps) {
+  private LongFunction<IntegralIterator> getIntegerIterator(Map iterationProps) {
     Integer iterationStartField = getIntegerNumberField(
         ITERATION_PROP,
         ITERATION_PROP_START,
@@ -1065,51 +1479,36 @@ public class Generator {
     );
   }
 
-  @SuppressWarnings("unchecked")
-  private <T> T generateIteration(Schema schema, Map propertiesProp) {
-    if (!iteratorCache.containsKey(schema)) {
-      iteratorCache.put(schema, parseIterations(schema, propertiesProp));
-    }
-    return (T) iteratorCache.get(schema).next();
-  }
-
-  private Collection<Object> generateArray(Schema schema, Map propertiesProp) {
-    int length = getLengthBounds(propertiesProp).random();
-    Collection<Object> result = new ArrayList<>(length);
-    for (int i = 0; i < length; i++) {
-      result.add(generateObject(schema.getElementType()));
-    }
-    return result;
+  private Node compileArray(Schema schema, Map propertiesProp) {
+    return new ArrayNode(
+        getLengthBounds(propertiesProp),
+        compile(schema.getElementType(), compilePath + "[]")
+    );
   }
 
-  private Boolean generateBoolean(Map propertiesProp) {
+  private Node compileBoolean(Map propertiesProp) {
     Double odds = getDecimalNumberField(ARG_PROPERTIES_PROP, ODDS_PROP, propertiesProp);
     if (odds == null) {
-      return random.nextBoolean();
-    } else {
-      if (odds < 0.0 || odds > 1.0) {
-        throw new RuntimeException(String.format(
-            "%s property must be in the range [0.0, 1.0]",
-            ODDS_PROP
-        ));
-      }
-      return random.nextDouble() < odds;
+      return new BooleanNode();
+    }
+    if (odds < 0.0 || odds > 1.0) {
+      throw new RuntimeException(String.format(
+          "%s property must be in the range [0.0, 1.0]",
+          ODDS_PROP
+      ));
     }
+    return new OddsBooleanNode(odds);
   }
 
-  private ByteBuffer generateBytes(Schema schema, Map propertiesProp) {
+  private Node compileBytes(Schema schema, Map propertiesProp) {
     LogicalTypes.Decimal decimalLogicalType = getDecimalLogicalType(schema);
-    byte[] bytes;
     if (decimalLogicalType != null) {
-      bytes = generateDecimal(decimalLogicalType);
-    } else {
-      bytes = new byte[getLengthBounds(propertiesProp.get(LENGTH_PROP)).random()];
-      random.nextBytes(bytes);
+      return new DecimalBytesNode(decimalLogicalType);
     }
-    return ByteBuffer.wrap(bytes);
+    return new BytesNode(getLengthBounds(propertiesProp.get(LENGTH_PROP)));
   }
 
-  private Double generateDouble(Map propertiesProp) {
+  private Node compileDouble(Map propertiesProp) {
     Object rangeProp = propertiesProp.get(RANGE_PROP);
     if (rangeProp != null) {
       if (rangeProp instanceof Map) {
@@ -1126,7 +1525,7 @@ public class Generator {
               RANGE_PROP
           ));
         }
-        return rangeMin + (random.nextDouble() * (rangeMax - rangeMin));
+        return new RangedDoubleNode(rangeMin, rangeMax);
       } else {
         throw new RuntimeException(String.format(
             "%s property must be an object",
@@ -1134,65 +1533,18 @@ public class Generator {
         ));
       }
     }
-    return random.nextDouble();
-  }
-
-  private GenericEnumSymbol generateEnumSymbol(Schema schema) {
-    List<String> enums = schema.getEnumSymbols();
-    return new
-        GenericData.EnumSymbol(schema, enums.get(random.nextInt(enums.size())));
+    return new DoubleNode();
   }
 
-  private GenericFixed generateFixed(Schema schema) {
+  private Node compileFixed(Schema schema) {
     LogicalTypes.Decimal decimalLogicalType = getDecimalLogicalType(schema);
-    byte[] bytes;
     if (decimalLogicalType != null) {
-      bytes = generateDecimal(decimalLogicalType);
-    } else {
-      bytes = new byte[schema.getFixedSize()];
-      random.nextBytes(bytes);
-    }
-    return new GenericData.Fixed(schema, bytes);
-  }
-
-  /*
-    According to the Avro 1.9.1 spec (http://avro.apache.org/docs/1.9.1/spec.html#Decimal):
-
-    "The decimal logical type represents an arbitrary-precision signed decimal number of the form
-  unscaled × 10-scale."
-
-    "A decimal logical type annotates Avro bytes or fixed types. The byte array must contain the
-  two's-complement representation of the unscaled integer value in big-endian byte order. The scale
-  is fixed, and is specified using an attribute."
-
-
-    We generate a random decimal here by starting with a value of zero, then repeatedly multiplying
-  by 10^15 (15 is the minimum number of significant digits in a double), and adding a new random
-  value in the range [0, 10^15) generated using the Random object for this generator. This is done
-  until the precision of the current value is equal to or greater than the precision of the logical
-  type. At this point, any extra digits (of there should be at most 14) are rounded off from the
-  value, a sign is randomly selected, it is converted to big-endian two's-complement representation,
-  and returned.
-   */
-  private byte[] generateDecimal(LogicalTypes.Decimal decimalLogicalType) {
-    BigInteger bigInteger = BigInteger.ZERO;
-    final long maxIncrementExclusive = 1_000_000_000_000_000L;
-    int precision;
-    for (precision = 0; precision < decimalLogicalType.getPrecision(); precision += 15) {
-      bigInteger = bigInteger.multiply(BigInteger.valueOf(maxIncrementExclusive));
-      long increment = (long) (random.nextDouble() * maxIncrementExclusive);
-      bigInteger = bigInteger.add(BigInteger.valueOf(increment));
-    }
-    bigInteger = bigInteger.divide(
-        BigInteger.TEN.pow(precision - decimalLogicalType.getPrecision())
-    );
-    if (random.nextBoolean()) {
-      bigInteger = bigInteger.negate();
+      return new DecimalFixedNode(schema, decimalLogicalType);
     }
-    return bigInteger.toByteArray();
+    return new FixedNode(schema);
   }
 
-  private Float generateFloat(Map propertiesProp) {
+  private Node compileFloat(Map propertiesProp) {
     Object rangeProp = propertiesProp.get(RANGE_PROP);
     if (rangeProp != null) {
       if (rangeProp instanceof Map) {
@@ -1217,13 +1569,13 @@ public class Generator {
               RANGE_PROP
           ));
         }
-        return rangeMin + (random.nextFloat() * (rangeMax - rangeMin));
+        return new RangedFloatNode(rangeMin, rangeMax);
       }
     }
-    return random.nextFloat();
+    return new FloatNode();
   }
 
-  private Integer generateInt(Map propertiesProp) {
+  private Node compileInt(Map propertiesProp) {
     Object rangeProp = propertiesProp.get(RANGE_PROP);
     if (rangeProp != null) {
       if (rangeProp instanceof Map) {
@@ -1240,13 +1592,13 @@ public class Generator {
               RANGE_PROP
           ));
         }
-        return rangeMin + ((int) (random.nextDouble() * (rangeMax - rangeMin)));
+        return new RangedIntNode(rangeMin, rangeMax);
       }
     }
-    return random.nextInt();
+    return new IntNode();
   }
 
-  private Long generateLong(Map propertiesProp) {
+  private Node compileLong(Map propertiesProp) {
     Object rangeProp = propertiesProp.get(RANGE_PROP);
     if (rangeProp != null) {
       if (rangeProp instanceof Map) {
@@ -1263,36 +1615,25 @@ public class Generator {
               RANGE_PROP
           ));
         }
-        return rangeMin + (((long) (random.nextDouble() * (rangeMax - rangeMin))));
+        return new RangedLongNode(rangeMin, rangeMax);
       }
     }
-    return random.nextLong();
+    return new LongNode();
   }
 
-  private Map<String, Object> generateMap(Schema schema, Map propertiesProp) {
-    Map<String, Object> result = new HashMap<>();
-    int length = getLengthBounds(propertiesProp).random();
+  private Node compileMap(Schema schema, Map propertiesProp) {
+    LengthBounds lengthBounds = getLengthBounds(propertiesProp);
+    Node keys;
     Object keyProp = propertiesProp.get(KEYS_PROP);
     if (keyProp == null) {
-      for (int i = 0; i < length; i++) {
-        result.put(generateRandomString(1), generateObject(schema.getValueType()));
-      }
+      keys = new StringNode(new LengthBounds(1), "", "");
     } else if (keyProp instanceof Map) {
       Map keyPropMap = (Map) keyProp;
       if (keyPropMap.containsKey(OPTIONS_PROP)) {
-        if (!optionsCache.containsKey(schema)) {
-          optionsCache.put(schema, parseOptions(Schema.create(Schema.Type.STRING), keyPropMap));
-        }
-        for (int i = 0; i < length; i++) {
-          result.put(generateOption(schema, keyPropMap), generateObject(schema.getValueType()));
-        }
+        Schema keySchema = Schema.create(Schema.Type.STRING);
+        keys = compileOptions(keySchema, getOptions(schema, keySchema, keyPropMap));
       } else {
-        for (int i = 0; i < length; i++) {
-          result.put(
-              generateString(schema, keyPropMap),
-              generateObject(schema.getValueType())
-          );
-        }
+        keys = compileString(keyPropMap);
       }
     } else {
       throw new RuntimeException(String.format(
@@ -1300,74 +1641,73 @@ public class Generator {
           KEYS_PROP
       ));
     }
-    return result;
-  }
-
-  private Object generateNull() {
-    return null;
+    return new MapNode(
+        schema,
+        lengthBounds,
+        keys,
+        compile(schema.getValueType(), compilePath + "{}")
+    );
   }
 
-  private GenericRecord generateRecord(Schema schema) {
-    GenericRecordBuilder builder = new GenericRecordBuilder(schema);
-    for (Schema.Field field : schema.getFields()) {
-      builder.set(field, generateObject(field.schema()));
+  private Node compileRecord(Schema schema) {
+    List<Schema.Field> fields = schema.getFields();
+    RecordNode result = new RecordNode(schema, fields.size());
+    // Register the node before compiling its fields in case the schema is recursive
+    compiledNodes.put(schema, result);
+    for (Schema.Field field : fields) {
+      result.fields[field.pos()] = compile(field.schema(), compilePath + "." + field.name());
     }
-    return builder.build();
+    return result;
   }
 
-  @SuppressWarnings("unchecked")
-  private String generateRegexString(Schema schema, Object regexProp, LengthBounds lengthBounds) {
-    if (!generexCache.containsKey(schema)) {
-      if (!(regexProp instanceof String)) {
-        throw new RuntimeException(String.format("%s property must be a string", REGEX_PROP));
-      }
-      generexCache.put(schema, new Generex((String) regexProp, random));
+  private RegexAutomaton getRegex(Object regexProp) {
+    if (!(regexProp instanceof String)) {
+      throw new RuntimeException(String.format("%s property must be a string", REGEX_PROP));
     }
-    // Generex.random(low, high) generates in range [low, high]; we want [low, high), so subtract
-    // 1 from maxLength
-    return generexCache.get(schema).random(lengthBounds.min(), lengthBounds.max() - 1);
+    return template.regexes.computeIfAbsent((String) regexProp, RegexAutomaton::compile);
   }
 
   private String generateRandomString(int length) {
     byte[] bytes = new byte[length];
-    for (int i = 0; i < length; i++) {
-      bytes[i] = (byte) random.nextInt(128);
-    }
+    random.nextAscii(bytes, 0, length);
     return new String(bytes, StandardCharsets.US_ASCII);
   }
 
-  private String generateString(Schema schema, Map propertiesProp) {
-    Object regexProp = propertiesProp.get(REGEX_PROP);
+  private Node compileString(Map propertiesProp) {
+    LengthBounds lengthBounds = getLengthBounds(propertiesProp);
+    String prefix = getStringField(PREFIX_PROP, propertiesProp);
+    String suffix = getStringField(SUFFIX_PROP, propertiesProp);
 
-    String result;
+    Object regexProp = propertiesProp.get(REGEX_PROP);
     if (regexProp != null) {
-      result = generateRegexString(schema, regexProp, getLengthBounds(propertiesProp));
+      return new RegexStringNode(getRegex(regexProp), lengthBounds, prefix, suffix);
     } else {
-      result = generateRandomString(getLengthBounds(propertiesProp).random());
+      return new StringNode(lengthBounds, prefix, suffix);
     }
-
-    return  prefixAndSuffixString(result, propertiesProp);
   }
 
-  private String prefixAndSuffixString(String result, Map propertiesProp) {
-    Object prefixProp = propertiesProp.get(PREFIX_PROP);
-    if (prefixProp != null && !(prefixProp instanceof String)) {
-      throw new RuntimeException(String.format("%s property must be a string", PREFIX_PROP));
+  private String getStringField(String property, Map propertiesProp) {
+    Object result = propertiesProp.get(property);
+    if (result != null && !(result instanceof String)) {
+      throw new RuntimeException(String.format("%s property must be a string", property));
     }
-    String prefix = prefixProp != null ? (String) prefixProp : "";
+    return result != null ? (String) result : "";
+  }
 
-    Object suffixProp = propertiesProp.get(SUFFIX_PROP);
-    if (suffixProp != null && !(suffixProp instanceof String)) {
-      throw new RuntimeException(String.format("%s property must be a string", SUFFIX_PROP));
+  private static String affix(String prefix, String value, String suffix) {
+    if (prefix.isEmpty() && suffix.isEmpty()) {
+      return value;
     }
-    String suffix = suffixProp != null ? (String) suffixProp : "";
-
-    return prefix + result + suffix;
+    return prefix + value + suffix;
   }
 
-  private Object generateUnion(Schema schema) {
+  private Node compileUnion(Schema schema) {
     List<Schema> schemas = schema.getTypes();
-    return generateObject(schemas.get(random.nextInt(schemas.size())));
+    Node[] branches = new Node[schemas.size()];
+    for (int i = 0; i < branches.length; i++) {
+      branches[i] = compile(schemas.get(i));
+    }
+    return new UnionNode(branches);
   }
 
   private LengthBounds getLengthBounds(Map propertiesProp) {
@@ -1506,6 +1846,7 @@ public class Generator {
     }
 
     public int random() {
+      // Even exact lengths take a draw, so that the values after them stay the same for a seed
       return min + random.nextInt(max - min);
     }
 
@@ -1518,99 +1859,1119 @@ public class Generator {
     }
   }
 
-  private static class IntegralIterator implements Iterator<Object> {
-    public enum Type {
-      INTEGER, LONG
+  /**
+   * A single, fully-resolved step of the generation plan for a schema. Every node can either
+   * produce its value as a Java object, or write it straight to an {@link Encoder}; for the same
+   * sequence of random values both produce the same datum.
+   */
+  private abstract class Node {
+    abstract Object generate();
+
+    // Like generate(), but may refill and return the given object (which may be null, or of any
+    // type) instead of allocating a new one
+    Object generate(Object reuse) {
+      return generate();
     }
 
-    private final BigInteger start;
-    private final BigInteger restart;
-    private final BigInteger step;
-    private final Type type;
-    private BigInteger current;
+    abstract void write(Encoder encoder) throws IOException;
+  }
 
-    public IntegralIterator(long start, long restart, long step, long initial, long count, Type type) {
-      this.start = BigInteger.valueOf(start);
-      this.restart = BigInteger.valueOf(restart);
-      this.step = BigInteger.valueOf(step);
-      this.type = type;
-      current = BigInteger.valueOf(initial).subtract(this.start);
-      if (count > 0) {
-        // This is essentially the following expression when ignoring negative values:
-        // current = (count * step) % (restart - start)
-        // except BigInteger::mod only operates on positive numbers, so remove and re-add the sign after the modulo.
-        current = BigInteger.valueOf(count)
-            .multiply(this.step)
-            .add(current)
-            .abs()
-            .mod(this.restart.subtract(this.start).abs())
-            .multiply(this.step.divide(this.step.abs()));
-      }
+  private class ProfiledNode extends Node {
+    private final GenerationProfiler.Entry entry;
+    private final Node node;
+    private final int samplingInterval;
+    private int countdown;
+
+    public ProfiledNode(GenerationProfiler.Entry entry, Node node) {
+      this.entry = entry;
+      this.node = node;
+      this.samplingInterval = profiler.samplingInterval();
+      this.countdown = samplingInterval;
     }
 
     @Override
-    public Object next() {
-      BigInteger result = current.add(start);
-      current = current
-          .add(step)
-          .abs()
-          .mod(restart.subtract(start).abs())
-          .multiply(step.divide(step.abs()));
+    Object generate() {
+      if (--countdown > 0) {
+        return node.generate();
+      }
+      countdown = samplingInterval;
+      long bytes = profiler.allocatedBytes();
+      long start = System.nanoTime();
+      Object result = node.generate();
+      account(start, bytes);
+      return result;
+    }
 
-      switch (type) {
-        case INTEGER:
-          return result.intValue();
-        case LONG:
-          return result.longValue();
-        default:
-          throw new RuntimeException(String.format("Unexpected Type: %s", type));
+    @Override
+    Object generate(Object reuse) {
+      if (--countdown > 0) {
+        return node.generate(reuse);
       }
+      countdown = samplingInterval;
+      long bytes = profiler.allocatedBytes();
+      long start = System.nanoTime();
+      Object result = node.generate(reuse);
+      account(start, bytes);
+      return result;
     }
 
     @Override
-    public boolean hasNext() {
-      return true;
+    void write(Encoder encoder) throws IOException {
+      if (--countdown > 0) {
+        node.write(encoder);
+        return;
+      }
+      countdown = samplingInterval;
+      long bytes = profiler.allocatedBytes();
+      long start = System.nanoTime();
+      node.write(encoder);
+      account(start, bytes);
+    }
+
+    private void account(long start, long bytes) {
+      long nanos = System.nanoTime() - start;
+      bytes = profiler.allocatedBytes() - bytes - profiler.allocationOverhead();
+      entry.add(samplingInterval, nanos, Math.max(bytes, 0));
     }
   }
 
-  private static class DecimalIterator implements Iterator<Object> {
-    public enum Type {
-      FLOAT, DOUBLE
+  static class Options {
+    // Exactly one of these is non-null
+    private final Object[] values;
+    private final MappedOptions mapped;
+    // Null if every value is equally likely
+    private final AliasTable weights;
+
+    public Options(List<Object> values, double[] weights) {
+      this(values.toArray(), null, weights);
     }
 
-    private final BigDecimal start;
-    private final BigDecimal restart;
-    private final BigDecimal modulo;
-    private final BigDecimal step;
-    private final Type type;
-    private BigDecimal current;
+    public Options(MappedOptions mapped, double[] weights) {
+      this(null, mapped, weights);
+    }
 
-    public DecimalIterator(double start, double restart, double step, double initial, long count, Type type) {
-      this.start = BigDecimal.valueOf(start);
-      this.restart = BigDecimal.valueOf(restart);
-      this.modulo = this.restart.subtract(this.start);
-      this.step = BigDecimal.valueOf(step);
-      this.type = type;
-      current = BigDecimal.valueOf(initial).subtract(this.start);
-      if (count > 0) {
-        current = BigDecimal.valueOf(count)
-            .multiply(this.step)
-            .add(current)
-            .remainder(this.modulo);
+    private Options(Object[] values, MappedOptions mapped, double[] weights) {
+      this.values = values;
+      this.mapped = mapped;
+      this.weights = weights != null ? new AliasTable(weights) : null;
+    }
+  }
+
+  private class OptionNode extends Node {
+    private final Object[] options;
+    private final AliasTable weights;
+    private final DatumWriter<Object> optionWriter;
+
+    public OptionNode(Schema schema, Options options) {
+      this.options = options.values;
+      this.weights = options.weights;
+      this.optionWriter = new GenericDatumWriter<>(schema);
+    }
+
+    @Override
+    Object generate() {
+      if (weights != null) {
+        return options[weights.next(random)];
+      }
+      return options[random.nextInt(options.length)];
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      optionWriter.write(generate(), encoder);
+    }
+  }
+
+  private class MappedOptionNode extends Node {
+    private final MappedOptions options;
+    private final AliasTable weights;
+    private final DatumReader<Object> optionReader;
+    private final DatumWriter<Object> optionWriter;
+    private final byte[] buffer;
+    private BinaryDecoder decoder;
+
+    public MappedOptionNode(Schema schema, Options options) {
+      this.options = options.mapped;
+      this.weights = options.weights;
+      this.optionReader = new GenericDatumReader<>(schema);
+      this.optionWriter = new GenericDatumWriter<>(schema);
+      this.buffer = new byte[this.options.maxLength()];
+    }
+
+    private int readNext() {
+      int index = weights != null ? weights.next(random) : random.nextInt(options.size());
+      return options.read(index, buffer);
+    }
+
+    @Override
+    Object generate() {
+      int length = readNext();
+      decoder = DecoderFactory.get().binaryDecoder(buffer, 0, length, decoder);
+      try {
+        return optionReader.read(null, decoder);
+      } catch (IOException ioe) {
+        throw new RuntimeException("Unable to decode mapped option", ioe);
+      }
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      if (encoder instanceof BinaryEncoder) {
+        // The option is already in exactly the form it would be written in
+        encoder.writeFixed(buffer, 0, readNext());
+      } else {
+        optionWriter.write(generate(), encoder);
+      }
+    }
+  }
+
+  private class IterationNode<T extends Iterator<Object>> extends Node {
+    protected final Schema.Type type;
+    private final LongFunction<T> iterators;
+    protected T iterator;
+
+    public IterationNode(Schema.Type type, LongFunction<T> iterators) {
+      this.type = type;
+      this.iterators = iterators;
+      this.iterator = iterators.apply(generation);
+    }
+
+    public void seek(long generation) {
+      iterator = iterators.apply(generation);
+    }
+
+    @Override
+    Object generate() {
+      return iterator.next();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      Object value = iterator.next();
+      switch (type) {
+        case BOOLEAN:
+          encoder.writeBoolean((Boolean) value);
+          break;
+        case INT:
+          encoder.writeInt((Integer) value);
+          break;
+        case LONG:
+          encoder.writeLong((Long) value);
+          break;
+        case FLOAT:
+          encoder.writeFloat((Float) value);
+          break;
+        case DOUBLE:
+          encoder.writeDouble((Double) value);
+          break;
+        case STRING:
+          encoder.writeString((String) value);
+          break;
+        default:
+          throw new RuntimeException(String.format("Unexpected Type: %s", type));
+      }
+    }
+  }
+
+  // Writes int and long iterations straight from the primitive value, without boxing it
+  private class IntegralIterationNode extends IterationNode<IntegralIterator> {
+    public IntegralIterationNode(Schema.Type type, LongFunction<IntegralIterator> iterators) {
+      super(type, iterators);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      if (type == Schema.Type.INT) {
+        encoder.writeInt((int) iterator.nextLong());
+      } else {
+        encoder.writeLong(iterator.nextLong());
+      }
+    }
+  }
+
+  // Writes float and double iterations straight from the primitive value, without boxing it
+  private class DecimalIterationNode extends IterationNode<DecimalIterator> {
+    public DecimalIterationNode(Schema.Type type, LongFunction<DecimalIterator> iterators) {
+      super(type, iterators);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      if (type == Schema.Type.FLOAT) {
+        encoder.writeFloat((float) iterator.nextDouble());
+      } else {
+        encoder.writeDouble(iterator.nextDouble());
+      }
+    }
+  }
+
+  private class ArrayNode extends Node {
+    private final LengthBounds lengthBounds;
+    private final Node elements;
+
+    public ArrayNode(LengthBounds lengthBounds, Node elements) {
+      this.lengthBounds = lengthBounds;
+      this.elements = elements;
+    }
+
+    @Override
+    Object generate() {
+      return generate(null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Object generate(Object reuse) {
+      int length = lengthBounds.random();
+      List<Object> result = reuse instanceof List ? (List<Object>) reuse : new ArrayList<>(length);
+      int reused = Math.min(length, result.size());
+      for (int i = 0; i < reused; i++) {
+        result.set(i, elements.generate(result.get(i)));
+      }
+      while (result.size() > length) {
+        result.remove(result.size() - 1);
+      }
+      for (int i = reused; i < length; i++) {
+        result.add(elements.generate(null));
+      }
+      return result;
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      int length = lengthBounds.random();
+      encoder.writeArrayStart();
+      encoder.setItemCount(length);
+      for (int i = 0; i < length; i++) {
+        encoder.startItem();
+        elements.write(encoder);
+      }
+      encoder.writeArrayEnd();
+    }
+  }
+
+  private class BooleanNode extends Node {
+    @Override
+    Object generate() {
+      return random.nextBoolean();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeBoolean(random.nextBoolean());
+    }
+  }
+
+  private class OddsBooleanNode extends Node {
+    private final double odds;
+
+    public OddsBooleanNode(double odds) {
+      this.odds = odds;
+    }
+
+    @Override
+    Object generate() {
+      return random.nextDouble() < odds;
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeBoolean(random.nextDouble() < odds);
+    }
+  }
+
+  private class BytesNode extends Node {
+    private final LengthBounds lengthBounds;
+    private byte[] buffer = new byte[0];
+
+    public BytesNode(LengthBounds lengthBounds) {
+      this.lengthBounds = lengthBounds;
+    }
+
+    @Override
+    Object generate() {
+      return generate(null);
+    }
+
+    @Override
+    Object generate(Object reuse) {
+      int length = lengthBounds.random();
+      if (reuse instanceof ByteBuffer) {
+        ByteBuffer result = (ByteBuffer) reuse;
+        if (result.hasArray() && result.capacity() >= length) {
+          random.nextBytes(result.array(), result.arrayOffset(), length);
+          result.clear();
+          result.limit(length);
+          return result;
+        }
+      }
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      return ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      int length = lengthBounds.random();
+      if (buffer.length < length) {
+        buffer = new byte[length];
+      }
+      random.nextBytes(buffer, 0, length);
+      encoder.writeBytes(buffer, 0, length);
+    }
+  }
+
+  /*
+    According to the Avro 1.9.1 spec (http://avro.apache.org/docs/1.9.1/spec.html#Decimal):
+
+    "The decimal logical type represents an arbitrary-precision signed decimal number of the form
+  unscaled × 10-scale."
+
+    "A decimal logical type annotates Avro bytes or fixed types. The byte array must contain the
+  two's-complement representation of the unscaled integer value in big-endian byte order. The scale
+  is fixed, and is specified using an attribute."
+
+
+    We generate a random decimal here by starting with a value of zero, then repeatedly multiplying
+  by 10^15 (15 is the minimum number of significant digits in a double), and adding a new random
+  value in the range [0, 10^15) generated using the random source for this generator. This is done
+  until the precision of the current value is equal to or greater than the precision of the logical
+  type. At this point, any extra digits (of there should be at most 14) are rounded off from the
+  value, a sign is randomly selected, it is converted to big-endian two's-complement representation,
+  and returned.
+   */
+  private abstract class DecimalNode extends Node {
+    private static final long MAX_INCREMENT_EXCLUSIVE = 1_000_000_000_000_000L;
+    private static final int DIGITS_PER_INCREMENT = 15;
+
+    private final int increments;
+    private final BigInteger excessDigits;
+
+    public DecimalNode(LogicalTypes.Decimal decimalLogicalType) {
+      int precision = decimalLogicalType.getPrecision();
+      this.increments = (precision + DIGITS_PER_INCREMENT - 1) / DIGITS_PER_INCREMENT;
+      this.excessDigits = BigInteger.TEN.pow(increments * DIGITS_PER_INCREMENT - precision);
+    }
+
+    protected byte[] generateDecimal() {
+      BigInteger bigInteger = BigInteger.ZERO;
+      for (int i = 0; i < increments; i++) {
+        bigInteger = bigInteger.multiply(BigInteger.valueOf(MAX_INCREMENT_EXCLUSIVE));
+        long increment = random.nextLong(MAX_INCREMENT_EXCLUSIVE);
+        bigInteger = bigInteger.add(BigInteger.valueOf(increment));
+      }
+      bigInteger = bigInteger.divide(excessDigits);
+      if (random.nextBoolean()) {
+        bigInteger = bigInteger.negate();
+      }
+      return bigInteger.toByteArray();
+    }
+  }
+
+  private class DecimalBytesNode extends DecimalNode {
+    public DecimalBytesNode(LogicalTypes.Decimal decimalLogicalType) {
+      super(decimalLogicalType);
+    }
+
+    @Override
+    Object generate() {
+      return ByteBuffer.wrap(generateDecimal());
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      byte[] bytes = generateDecimal();
+      encoder.writeBytes(bytes, 0, bytes.length);
+    }
+  }
+
+  private class DecimalFixedNode extends DecimalNode {
+    private final Schema schema;
+
+    public DecimalFixedNode(Schema schema, LogicalTypes.Decimal decimalLogicalType) {
+      super(decimalLogicalType);
+      this.schema = schema;
+    }
+
+    @Override
+    Object generate() {
+      return new GenericData.Fixed(schema, generateFixedDecimal());
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      byte[] bytes = generateFixedDecimal();
+      encoder.writeFixed(bytes, 0, bytes.length);
+    }
+
+    // The two's-complement representation has to be sign-extended to the full size of the fixed
+    // schema, otherwise the value cannot be serialized
+    private byte[] generateFixedDecimal() {
+      byte[] unscaled = generateDecimal();
+      int size = schema.getFixedSize();
+      if (unscaled.length >= size) {
+        return unscaled;
+      }
+      byte[] result = new byte[size];
+      byte signExtension = (byte) (unscaled[0] < 0 ? -1 : 0);
+      Arrays.fill(result, 0, size - unscaled.length, signExtension);
+      System.arraycopy(unscaled, 0, result, size - unscaled.length, unscaled.length);
+      return result;
+    }
+  }
+
+  private class DoubleNode extends Node {
+    @Override
+    Object generate() {
+      return random.nextDouble();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeDouble(random.nextDouble());
+    }
+  }
+
+  private class RangedDoubleNode extends Node {
+    private final double rangeMin;
+    private final double rangeSize;
+
+    public RangedDoubleNode(double rangeMin, double rangeMax) {
+      this.rangeMin = rangeMin;
+      this.rangeSize = rangeMax - rangeMin;
+    }
+
+    @Override
+    Object generate() {
+      return nextDouble();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeDouble(nextDouble());
+    }
+
+    private double nextDouble() {
+      return rangeMin + (random.nextDouble() * rangeSize);
+    }
+  }
+
+  private class EnumNode extends Node {
+    private final GenericEnumSymbol[] symbols;
+
+    public EnumNode(Schema schema) {
+      List<String> enums = schema.getEnumSymbols();
+      this.symbols = new GenericEnumSymbol[enums.size()];
+      for (int i = 0; i < symbols.length; i++) {
+        symbols[i] = new GenericData.EnumSymbol(schema, enums.get(i));
+      }
+    }
+
+    @Override
+    Object generate() {
+      return symbols[random.nextInt(symbols.length)];
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeEnum(random.nextInt(symbols.length));
+    }
+  }
+
+  private class FixedNode extends Node {
+    private final Schema schema;
+    private final byte[] buffer;
+
+    public FixedNode(Schema schema) {
+      this.schema = schema;
+      this.buffer = new byte[schema.getFixedSize()];
+    }
+
+    @Override
+    Object generate() {
+      return generate(null);
+    }
+
+    @Override
+    Object generate(Object reuse) {
+      if (reuse instanceof GenericData.Fixed) {
+        GenericData.Fixed result = (GenericData.Fixed) reuse;
+        if (result.bytes().length == buffer.length && schema.equals(result.getSchema())) {
+          random.nextBytes(result.bytes());
+          return result;
+        }
+      }
+      byte[] bytes = new byte[schema.getFixedSize()];
+      random.nextBytes(bytes);
+      return new GenericData.Fixed(schema, bytes);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      random.nextBytes(buffer);
+      encoder.writeFixed(buffer, 0, buffer.length);
+    }
+  }
+
+  private class FloatNode extends Node {
+    @Override
+    Object generate() {
+      return random.nextFloat();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeFloat(random.nextFloat());
+    }
+  }
+
+  private class RangedFloatNode extends Node {
+    private final float rangeMin;
+    private final float rangeSize;
+
+    public RangedFloatNode(float rangeMin, float rangeMax) {
+      this.rangeMin = rangeMin;
+      this.rangeSize = rangeMax - rangeMin;
+    }
+
+    @Override
+    Object generate() {
+      return nextFloat();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeFloat(nextFloat());
+    }
+
+    private float nextFloat() {
+      return rangeMin + (random.nextFloat() * rangeSize);
+    }
+  }
+
+  private class IntNode extends Node {
+    @Override
+    Object generate() {
+      return random.nextInt();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeInt(random.nextInt());
+    }
+  }
+
+  private class RangedIntNode extends Node {
+    private final int rangeMin;
+    private final int rangeSize;
+
+    public RangedIntNode(int rangeMin, int rangeMax) {
+      this.rangeMin = rangeMin;
+      this.rangeSize = rangeMax - rangeMin;
+    }
+
+    @Override
+    Object generate() {
+      return nextInt();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeInt(nextInt());
+    }
+
+    private int nextInt() {
+      return rangeMin + ((int) (random.nextDouble() * rangeSize));
+    }
+  }
+
+  private class LongNode extends Node {
+    @Override
+    Object generate() {
+      return random.nextLong();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeLong(random.nextLong());
+    }
+  }
+
+  private class RangedLongNode extends Node {
+    private final long rangeMin;
+    private final long rangeSize;
+
+    public RangedLongNode(long rangeMin, long rangeMax) {
+      this.rangeMin = rangeMin;
+      this.rangeSize = rangeMax - rangeMin;
+    }
+
+    @Override
+    Object generate() {
+      return nextLong();
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeLong(nextLong());
+    }
+
+    private long nextLong() {
+      return rangeMin + ((long) (random.nextDouble() * rangeSize));
+    }
+  }
+
+  private class MapNode extends Node {
+    private final LengthBounds lengthBounds;
+    private final Node keys;
+    private final Node values;
+    private final DatumWriter<Object> mapWriter;
+
+    public MapNode(Schema schema, LengthBounds lengthBounds, Node keys, Node values) {
+      this.lengthBounds = lengthBounds;
+      this.keys = keys;
+      this.values = values;
+      this.mapWriter = new GenericDatumWriter<>(schema);
+    }
+
+    @Override
+    Object generate() {
+      return generate(null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Object generate(Object reuse) {
+      int length = lengthBounds.random();
+      // Entries are kept in insertion order, so a map that is cleared and refilled iterates (and
+      // is written) in the same order as one that is built from scratch
+      Map<Object, Object> result;
+      if (reuse instanceof LinkedHashMap) {
+        result = (Map<Object, Object>) reuse;
+        result.clear();
+      } else {
+        result = new LinkedHashMap<>();
+      }
+      for (int i = 0; i < length; i++) {
+        result.put(keys.generate(), values.generate());
+      }
+      return result;
+    }
+
+    // Generated keys may collide, and the number of distinct entries (which has to be written
+    // before any of them) is only known once all of them have been generated, so maps are still
+    // materialized before being written
+    @Override
+    void write(Encoder encoder) throws IOException {
+      mapWriter.write(generate(), encoder);
+    }
+  }
+
+  private class NullNode extends Node {
+    @Override
+    Object generate() {
+      return null;
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      encoder.writeNull();
+    }
+  }
+
+  private class RecordNode extends Node {
+    private final Schema schema;
+    private final Node[] fields;
+
+    public RecordNode(Schema schema, int numFields) {
+      this.schema = schema;
+      this.fields = new Node[numFields];
+    }
+
+    @Override
+    Object generate() {
+      return generate(null);
+    }
+
+    @Override
+    Object generate(Object reuse) {
+      GenericRecord result;
+      if (reuse instanceof GenericData.Record
+          && schema.equals(((GenericData.Record) reuse).getSchema())) {
+        result = (GenericRecord) reuse;
+      } else {
+        result = new GenericData.Record(schema);
+      }
+      for (int i = 0; i < fields.length; i++) {
+        result.put(i, fields[i].generate(result.get(i)));
+      }
+      return result;
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      for (Node field : fields) {
+        field.write(encoder);
+      }
+    }
+  }
+
+  private class StringNode extends Node {
+    private final LengthBounds lengthBounds;
+    private final String prefix;
+    private final String suffix;
+    private final byte[] prefixBytes;
+    private final byte[] suffixBytes;
+    private final Utf8 buffer = new Utf8();
+
+    public StringNode(LengthBounds lengthBounds, String prefix, String suffix) {
+      this.lengthBounds = lengthBounds;
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+      this.suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    Object generate() {
+      return affix(prefix, generateRandomString(lengthBounds.random()), suffix);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      int length = lengthBounds.random();
+      buffer.setByteLength(prefixBytes.length + length + suffixBytes.length);
+      byte[] bytes = buffer.getBytes();
+      System.arraycopy(prefixBytes, 0, bytes, 0, prefixBytes.length);
+      random.nextAscii(bytes, prefixBytes.length, length);
+      System.arraycopy(suffixBytes, 0, bytes, prefixBytes.length + length, suffixBytes.length);
+      encoder.writeString(buffer);
+    }
+  }
+
+  private class RegexStringNode extends Node {
+    private final RegexAutomaton.Sampler sampler;
+    private final boolean ascii;
+    private final String prefix;
+    private final String suffix;
+    private final byte[] prefixBytes;
+    private final byte[] suffixBytes;
+    private final char[] chars;
+    private final Utf8 buffer = new Utf8();
+
+    public RegexStringNode(
+        RegexAutomaton regex,
+        LengthBounds lengthBounds,
+        String prefix,
+        String suffix) {
+      // Without an upper bound, lengths are drawn from a range as wide as the default one
+      int maxLength = lengthBounds.max() == Integer.MAX_VALUE
+          ? lengthBounds.min() + LengthBounds.DEFAULT_MAX - LengthBounds.DEFAULT_MIN
+          : lengthBounds.max();
+      this.sampler = regex.sampler(lengthBounds.min(), maxLength);
+      this.ascii = regex.isAscii();
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+      this.suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+      this.chars = new char[sampler.maxLength()];
+    }
+
+    @Override
+    Object generate() {
+      int length = sampler.next(random, chars);
+      return affix(prefix, new String(chars, 0, length), suffix);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      if (!ascii) {
+        encoder.writeString((String) generate());
+        return;
+      }
+      int length = sampler.next(random, chars);
+      buffer.setByteLength(prefixBytes.length + length + suffixBytes.length);
+      byte[] bytes = buffer.getBytes();
+      System.arraycopy(prefixBytes, 0, bytes, 0, prefixBytes.length);
+      for (int i = 0; i < length; i++) {
+        bytes[prefixBytes.length + i] = (byte) chars[i];
+      }
+      System.arraycopy(suffixBytes, 0, bytes, prefixBytes.length + length, suffixBytes.length);
+      encoder.writeString(buffer);
+    }
+  }
+
+
+  private class UnionNode extends Node {
+    private final Node[] branches;
+
+    public UnionNode(Node[] branches) {
+      this.branches = branches;
+    }
+
+    @Override
+    Object generate() {
+      return branches[random.nextInt(branches.length)].generate();
+    }
+
+    @Override
+    Object generate(Object reuse) {
+      // Each branch only reuses objects of its own type
+      return branches[random.nextInt(branches.length)].generate(reuse);
+    }
+
+    @Override
+    void write(Encoder encoder) throws IOException {
+      int branch = random.nextInt(branches.length);
+      encoder.writeIndex(branch);
+      branches[branch].write(encoder);
+    }
+  }
+
+  private abstract static class IntegralIterator implements Iterator<Object> {
+    public enum Type {
+      INTEGER, LONG
+    }
+
+    private final Type type;
+
+    protected IntegralIterator(Type type) {
+      this.type = type;
+    }
+
+    // Steps with primitive longs unless a step could overflow one, in which case BigInteger is used
+    public static IntegralIterator create(
+        long start, long restart, long step, long initial, long count, Type type) {
+      BigInteger bigStart = BigInteger.valueOf(start);
+      BigInteger bigStep = BigInteger.valueOf(step);
+      BigInteger modulo = BigInteger.valueOf(restart).subtract(bigStart).abs();
+      BigInteger current = BigInteger.valueOf(initial).subtract(bigStart);
+      if (count > 0) {
+        // This is essentially the following expression when ignoring negative values:
+        // current = (count * step) % (restart - start)
+        // except BigInteger::mod only operates on positive numbers, so remove and re-add the sign
+        // after the modulo.
+        current = BigInteger.valueOf(count).multiply(bigStep).add(current).abs().mod(modulo);
+        if (step < 0) {
+          current = current.negate();
+        }
+      }
+      // Every later value of current is smaller than modulo in magnitude
+      BigInteger largestSum = current.abs().max(modulo).add(bigStep.abs());
+      if (largestSum.bitLength() < Long.SIZE) {
+        return new LongIntegralIterator(start, step, modulo.longValue(), current.longValue(), type);
+      }
+      return new BigIntegralIterator(bigStart, bigStep, modulo, current, type);
+    }
+
+    protected abstract long nextValue();
+
+    public long nextLong() {
+      long result = nextValue();
+      return type == Type.INTEGER ? (int) result : result;
+    }
+
+    @Override
+    public Object next() {
+      switch (type) {
+        case INTEGER:
+          return (int) nextValue();
+        case LONG:
+          return nextValue();
+        default:
+          throw new RuntimeException(String.format("Unexpected Type: %s", type));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return true;
+    }
+  }
+
+  private static class LongIntegralIterator extends IntegralIterator {
+    private final long start;
+    private final long step;
+    private final long modulo;
+    private long current;
+
+    public LongIntegralIterator(long start, long step, long modulo, long current, Type type) {
+      super(type);
+      this.start = start;
+      this.step = step;
+      this.modulo = modulo;
+      this.current = current;
+    }
+
+    @Override
+    protected long nextValue() {
+      long result = current + start;
+      current = Math.abs(current + step) % modulo;
+      if (step < 0) {
+        current = -current;
+      }
+      return result;
+    }
+  }
+
+  private static class BigIntegralIterator extends IntegralIterator {
+    private final BigInteger start;
+    private final BigInteger step;
+    private final BigInteger modulo;
+    private BigInteger current;
+
+    public BigIntegralIterator(
+        BigInteger start, BigInteger step, BigInteger modulo, BigInteger current, Type type) {
+      super(type);
+      this.start = start;
+      this.step = step;
+      this.modulo = modulo;
+      this.current = current;
+    }
+
+    @Override
+    protected long nextValue() {
+      BigInteger result = current.add(start);
+      current = current.add(step).abs().mod(modulo);
+      if (step.signum() < 0) {
+        current = current.negate();
+      }
+      return result.longValue();
+    }
+  }
+
+  /*
+    Values are iterated exactly with BigDecimal arithmetic; since that means several allocations per
+  value, the start, step, modulo and current values are also scaled to a common power of ten and
+  iterated as (unscaled) longs for as long as they fit. Results are only converted to floating
+  point on output, and that conversion is correctly rounded, just like BigDecimal's own, so both
+  ways of iterating produce identical values.
+   */
+  private static class DecimalIterator implements Iterator<Object> {
+    public enum Type {
+      FLOAT, DOUBLE
+    }
+
+    // Every power of ten in this table is exactly representable as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long DOUBLE_EXACT_LIMIT = 1L << 53;
+    private static final int FLOAT_DROPPED_BITS = 53 - 24;
+    private static final long FLOAT_MIDPOINT = 1L << (FLOAT_DROPPED_BITS - 1);
+    private static final long FLOAT_DROPPED_MASK = (1L << FLOAT_DROPPED_BITS) - 1;
+    // Bounds the error (in ulps) of dividing an inexact double by an exact power of ten
+    private static final long ROUNDING_ERROR_MARGIN = 8;
+
+    private final BigDecimal start;
+    private final BigDecimal modulo;
+    private final BigDecimal step;
+    private final Type type;
+    private BigDecimal current;
+
+    private final int scale;
+    private final long fixedStart;
+    private final long fixedStep;
+    // Zero if the modulo doesn't fit in a long, in which case no long value ever reaches it
+    private final long fixedModulo;
+    // The largest magnitude of fixedCurrent that can't overflow when added to the start or step
+    private final long fixedLimit;
+    private long fixedCurrent;
+    private boolean fixed;
+
+    public DecimalIterator(
+        double start, double restart, double step, double initial, long count, Type type) {
+      this.start = BigDecimal.valueOf(start);
+      this.modulo = BigDecimal.valueOf(restart).subtract(this.start);
+      this.step = BigDecimal.valueOf(step);
+      this.type = type;
+      current = BigDecimal.valueOf(initial).subtract(this.start);
+      if (count > 0) {
+        current = BigDecimal.valueOf(count)
+            .multiply(this.step)
+            .add(current)
+            .remainder(this.modulo);
+      }
+
+      scale = Math.max(
+          Math.max(0, modulo.scale()),
+          Math.max(this.start.scale(), Math.max(this.step.scale(), current.scale()))
+      );
+      BigInteger unscaledStart = this.start.setScale(scale).unscaledValue();
+      BigInteger unscaledStep = this.step.setScale(scale).unscaledValue();
+      BigInteger unscaledModulo = modulo.setScale(scale).unscaledValue();
+      BigInteger unscaledCurrent = current.setScale(scale).unscaledValue();
+      fixedStart = unscaledStart.longValue();
+      fixedStep = unscaledStep.longValue();
+      fixedModulo = unscaledModulo.bitLength() < Long.SIZE ? unscaledModulo.longValue() : 0;
+      if (unscaledStart.bitLength() < Long.SIZE - 1 && unscaledStep.bitLength() < Long.SIZE - 1) {
+        fixedLimit = Long.MAX_VALUE - Math.max(Math.abs(fixedStart), Math.abs(fixedStep));
+        fixed = unscaledCurrent.abs().compareTo(BigInteger.valueOf(fixedLimit)) <= 0;
+      } else {
+        fixedLimit = 0;
+        fixed = false;
+      }
+      fixedCurrent = fixed ? unscaledCurrent.longValue() : 0;
+    }
+
+    /**
+     * @return The next value, rounded to a float first if this iterates over floats.
+     */
+    public double nextDouble() {
+      if (!fixed) {
+        BigDecimal result = current.add(start);
+        current = current
+            .add(step)
+            .remainder(modulo);
+        return type == Type.FLOAT ? result.floatValue() : result.doubleValue();
+      }
+
+      long result = fixedCurrent + fixedStart;
+      long next = fixedCurrent + fixedStep;
+      if (fixedModulo != 0) {
+        next %= fixedModulo;
+      }
+      if (Math.abs(next) <= fixedLimit) {
+        fixedCurrent = next;
+      } else {
+        current = BigDecimal.valueOf(next, scale);
+        fixed = false;
+      }
+      return type == Type.FLOAT ? toFloat(result) : toDouble(result);
+    }
+
+    private double toDouble(long unscaled) {
+      if (Math.abs(unscaled) < DOUBLE_EXACT_LIMIT && scale < POWERS_OF_TEN.length) {
+        // Both operands are exact, so the division is correctly rounded
+        return unscaled / POWERS_OF_TEN[scale];
+      }
+      return BigDecimal.valueOf(unscaled, scale).doubleValue();
+    }
+
+    private float toFloat(long unscaled) {
+      if (scale < POWERS_OF_TEN.length) {
+        // This is within a few ulps of the exact value; unless it's that close to a point halfway
+        // between two floats, it rounds to the same float the exact value would.
+        double approximation = unscaled / POWERS_OF_TEN[scale];
+        double magnitude = Math.abs(approximation);
+        long dropped = Double.doubleToRawLongBits(approximation) & FLOAT_DROPPED_MASK;
+        if (approximation == 0
+            || (magnitude >= Float.MIN_NORMAL && magnitude < Float.MAX_VALUE
+                && Math.abs(dropped - FLOAT_MIDPOINT) > ROUNDING_ERROR_MARGIN)) {
+          return (float) approximation;
+        }
       }
+      return BigDecimal.valueOf(unscaled, scale).floatValue();
     }
 
     @Override
     public Object next() {
-      BigDecimal result = current.add(start);
-      current = current
-          .add(step)
-          .remainder(modulo);
       switch (type) {
         case FLOAT:
-          return result.floatValue();
+          return (float) nextDouble();
         case DOUBLE:
-          return result.doubleValue();
+          return nextDouble();
         default:
           throw new RuntimeException(String.format("Unexpected Type: %s", type));
       }
@@ -0,0 +1,65 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A schema compiled for any number of {@link Generator}s to share, on any number of threads.
+ *
+ * <p>Everything that is expensive to prepare and never changes once it is (the values of options,
+ * including option files, and regex automata) is parsed when the template is compiled, and reused
+ * by every generator built from it with {@link Generator.Builder#template(GeneratorTemplate)}.
+ * Those generators only hold what changes as values are generated, which is their random source
+ * and the positions of their iterators, so building one per thread is cheap.
+ */
+public final class GeneratorTemplate {
+
+  private final Schema schema;
+
+  // Shared by all generators built from the template; only ever added to while compiling
+  final Map<String, RegexAutomaton> regexes = new ConcurrentHashMap<>();
+  final Map<Schema, Generator.Options> options = new ConcurrentHashMap<>();
+
+  // Uncompiled; properties are parsed by whichever generator first needs them
+  GeneratorTemplate(Schema schema) {
+    this.schema = schema;
+  }
+
+  /**
+   * Parse every property of a schema that generators can share, reporting any that are invalid.
+   * @param schema The schema to generate values for.
+   * @return The compiled template.
+   */
+  public static GeneratorTemplate compile(Schema schema) {
+    GeneratorTemplate result = new GeneratorTemplate(schema);
+    // Compiling a generator looks up the properties of every schema it can generate values for
+    new Generator(result, RandomSource.splitMix64(0L), 0L, null);
+    return result;
+  }
+
+  /**
+   * @return The schema that generators built from the template produce values for.
+   */
+  public Schema schema() {
+    return schema;
+  }
+}
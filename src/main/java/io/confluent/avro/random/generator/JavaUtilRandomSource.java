@@ -0,0 +1,91 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.util.Random;
+
+/**
+ * Draws values from a {@link Random} object, calling the same methods on it that generators used
+ * to before random sources were introduced, so that values seeded with a {@link Random} stay the
+ * same. Strings generated from a regex are the exception; those no longer come from Generex.
+ */
+final class JavaUtilRandomSource implements RandomSource {
+
+  private final Random random;
+
+  public JavaUtilRandomSource(Random random) {
+    this.random = random;
+  }
+
+  @Override
+  public long nextLong() {
+    return random.nextLong();
+  }
+
+  // Scales a double, the way bounded longs were drawn before
+  @Override
+  public long nextLong(long bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    return (long) (random.nextDouble() * bound);
+  }
+
+  @Override
+  public int nextInt() {
+    return random.nextInt();
+  }
+
+  @Override
+  public int nextInt(int bound) {
+    return random.nextInt(bound);
+  }
+
+  @Override
+  public double nextDouble() {
+    return random.nextDouble();
+  }
+
+  @Override
+  public float nextFloat() {
+    return random.nextFloat();
+  }
+
+  @Override
+  public boolean nextBoolean() {
+    return random.nextBoolean();
+  }
+
+  // Mirrors Random::nextBytes, but can fill any part of an array
+  @Override
+  public void nextBytes(byte[] bytes, int offset, int length) {
+    for (int i = offset; i < offset + length; ) {
+      int rnd = random.nextInt();
+      for (int n = Math.min(offset + length - i, Integer.BYTES); n-- > 0; rnd >>= Byte.SIZE) {
+        bytes[i++] = (byte) rnd;
+      }
+    }
+  }
+
+  // One draw per character, the way random strings were generated before
+  @Override
+  public void nextAscii(byte[] bytes, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      bytes[i] = (byte) random.nextInt(128);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+
+import java.io.IOException;
+
+/**
+ * Encodes records as JSON Lines, one compact record per line, with a {@link JsonLinesWriter}
+ * rather than Avro's JSON encoder.
+ */
+class JsonLinesRecordEncoder implements RecordEncoder {
+
+  private final JsonLinesWriter writer;
+  private Object reuse;
+
+  public JsonLinesRecordEncoder(Schema schema, boolean plainUnions) {
+    this.writer = new JsonLinesWriter(schema, plainUnions);
+  }
+
+  @Override
+  public void encode(Generator generator, int count, EncodedRecords records) throws IOException {
+    for (int i = 0; i < count; i++) {
+      reuse = generator.generate(reuse);
+      writer.write(reuse);
+      writer.writeTo(records);
+      records.endRecord();
+    }
+  }
+}
@@ -0,0 +1,572 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes generated values as compact JSON, one value per line, straight into a reusable byte
+ * buffer. The schema is compiled once into a tree of writers, with every field name and union
+ * label escaped and encoded up front, so writing a value is only a matter of walking the tree and
+ * formatting numbers and strings.
+ *
+ * <p>Values are written the way Avro's own JSON encoder writes them, except that unions can
+ * optionally be written as plain JSON: Avro wraps every non-null union value in an object whose
+ * only key is the name of the branch, while plain JSON writes the value on its own. Bytes and
+ * fixed values are written as strings with one character per byte, as Avro does.
+ */
+class JsonLinesWriter {
+
+  private static final int INITIAL_CAPACITY = 8192;
+
+  private static final byte[] NULL = ascii("null");
+  private static final byte[] TRUE = ascii("true");
+  private static final byte[] FALSE = ascii("false");
+  private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+  private static final byte[] POINT_ZERO = ascii(".0");
+  // Upper case, like Jackson
+  private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+  // For each ASCII character, 0 if it's written as is, or the character that follows the
+  // backslash it's escaped with
+  private static final byte[] ESCAPES = new byte[128];
+
+  static {
+    for (int c = 0; c < 0x20; c++) {
+      ESCAPES[c] = 'u';
+    }
+    ESCAPES['"'] = '"';
+    ESCAPES['\\'] = '\\';
+    ESCAPES['\b'] = 'b';
+    ESCAPES['\f'] = 'f';
+    ESCAPES['\n'] = 'n';
+    ESCAPES['\r'] = 'r';
+    ESCAPES['\t'] = 't';
+  }
+
+  // Integral values in this range are formatted by Double.toString as digits followed by ".0"
+  private static final double PLAIN_DOUBLE_LIMIT = 1e7;
+
+  private final Map<Schema, ValueWriter> compiledWriters = new IdentityHashMap<>();
+  private final boolean plainUnions;
+  private final ValueWriter root;
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * @param schema The schema of the values to write.
+   * @param plainUnions Whether to write union values as plain JSON rather than the way Avro does.
+   */
+  public JsonLinesWriter(Schema schema, boolean plainUnions) {
+    this.plainUnions = plainUnions;
+    this.root = compile(schema);
+  }
+
+  /**
+   * Append a value to the buffer, followed by a newline.
+   * @param value The value to write, as generated for the schema.
+   */
+  public void write(Object value) {
+    root.write(value);
+    ensureCapacity(1);
+    buffer[size++] = '\n';
+  }
+
+  /**
+   * @return The number of bytes in the buffer.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Write the contents of the buffer to the given stream, and empty it.
+   * @param out The stream to write to.
+   * @throws IOException if an error occurs while writing to the stream.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buffer, 0, size);
+    size = 0;
+  }
+
+  private ValueWriter compile(Schema schema) {
+    ValueWriter result = compiledWriters.get(schema);
+    if (result != null) {
+      return result;
+    }
+    switch (schema.getType()) {
+      case NULL:
+        result = new NullWriter();
+        break;
+      case BOOLEAN:
+        result = new BooleanWriter();
+        break;
+      case INT:
+      case LONG:
+        result = new IntegralWriter();
+        break;
+      case FLOAT:
+        result = new FloatWriter();
+        break;
+      case DOUBLE:
+        result = new DoubleWriter();
+        break;
+      case STRING:
+      case ENUM:
+        result = new StringWriter();
+        break;
+      case BYTES:
+        result = new BytesWriter();
+        break;
+      case FIXED:
+        result = new FixedWriter();
+        break;
+      case ARRAY:
+        result = new ArrayWriter();
+        break;
+      case MAP:
+        result = new MapWriter();
+        break;
+      case RECORD:
+        result = new RecordWriter(schema.getFields().size());
+        break;
+      case UNION:
+        result = new UnionWriter(schema.getTypes());
+        break;
+      default:
+        throw new RuntimeException(String.format(
+            "Cannot write values of type %s as JSON",
+            schema.getType().getName()
+        ));
+    }
+    // Registered before compiling children, so that recursive schemas compile to a cyclic tree
+    compiledWriters.put(schema, result);
+    switch (schema.getType()) {
+      case ARRAY:
+        ((ArrayWriter) result).elements = compile(schema.getElementType());
+        break;
+      case MAP:
+        ((MapWriter) result).values = compile(schema.getValueType());
+        break;
+      case RECORD:
+        RecordWriter record = (RecordWriter) result;
+        List<Schema.Field> fields = schema.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+          // Every field but the first is preceded by a comma; the opening brace comes before them
+          String prefix = i == 0 ? "" : ",";
+          record.names[i] = concat(ascii(prefix), quoted(fields.get(i).name()), ascii(":"));
+          record.fields[i] = compile(fields.get(i).schema());
+        }
+        break;
+      case UNION:
+        UnionWriter union = (UnionWriter) result;
+        for (int i = 0; i < union.branches.length; i++) {
+          Schema branch = union.schemas[i];
+          union.branches[i] = compile(branch);
+          if (!plainUnions && branch.getType() != Schema.Type.NULL) {
+            union.labels[i] = concat(ascii("{"), quoted(branch.getFullName()), ascii(":"));
+          }
+        }
+        break;
+      default:
+        break;
+    }
+    return result;
+  }
+
+  // Whether a value generated for one branch of a union belongs to the given branch
+  private static boolean matches(Schema schema, Object value) {
+    switch (schema.getType()) {
+      case NULL:
+        return value == null;
+      case BOOLEAN:
+        return value instanceof Boolean;
+      case INT:
+        return value instanceof Integer;
+      case LONG:
+        return value instanceof Long;
+      case FLOAT:
+        return value instanceof Float;
+      case DOUBLE:
+        return value instanceof Double;
+      case STRING:
+        return value instanceof CharSequence;
+      case BYTES:
+        return value instanceof ByteBuffer;
+      case ARRAY:
+        return value instanceof Collection;
+      case MAP:
+        return value instanceof Map;
+      case ENUM:
+        return value instanceof GenericEnumSymbol && isNamed(schema, (GenericContainer) value);
+      case FIXED:
+        return value instanceof GenericFixed && isNamed(schema, (GenericContainer) value);
+      case RECORD:
+        return value instanceof IndexedRecord && isNamed(schema, (GenericContainer) value);
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isNamed(Schema schema, GenericContainer value) {
+    Schema valueSchema = value.getSchema();
+    return valueSchema == schema || valueSchema.getFullName().equals(schema.getFullName());
+  }
+
+  // Writes a string into the buffer and takes it back out, for names that are written as is
+  private byte[] quoted(String string) {
+    int start = size;
+    writeString(string);
+    byte[] result = Arrays.copyOfRange(buffer, start, size);
+    size = start;
+    return result;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+    size += bytes.length;
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      // The only value that can't be negated
+      writeBytes(MIN_LONG);
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[size++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest != 0; rest /= 10) {
+      digits++;
+    }
+    size += digits;
+    for (int i = size - 1; i >= size - digits; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private void writeDouble(double value, boolean isFloat) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      // Like Jackson, which Avro writes JSON with, non-finite numbers are quoted
+      writeString(isFloat ? Float.toString((float) value) : Double.toString(value));
+    } else if (value > -PLAIN_DOUBLE_LIMIT && value < PLAIN_DOUBLE_LIMIT && value == (long) value
+        && (value != 0 || 1 / value > 0)) {
+      writeLong((long) value);
+      writeBytes(POINT_ZERO);
+    } else {
+      String formatted = isFloat ? Float.toString((float) value) : Double.toString(value);
+      int length = formatted.length();
+      ensureCapacity(length);
+      for (int i = 0; i < length; i++) {
+        buffer[size++] = (byte) formatted.charAt(i);
+      }
+    }
+  }
+
+  private void writeString(String value) {
+    int length = value.length();
+    // Enough for every character to be escaped as six bytes
+    ensureCapacity(2 + 6 * length);
+    byte[] buffer = this.buffer;
+    int size = this.size;
+    buffer[size++] = '"';
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (ESCAPES[c] == 0) {
+          buffer[size++] = (byte) c;
+        } else {
+          size = escape(buffer, size, c);
+        }
+      } else if (c < 0x800) {
+        buffer[size++] = (byte) (0xC0 | (c >> 6));
+        buffer[size++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+        buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogates can't be encoded, and are replaced the way String.getBytes does
+        buffer[size++] = '?';
+      } else {
+        buffer[size++] = (byte) (0xE0 | (c >> 12));
+        buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[size++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    buffer[size++] = '"';
+    this.size = size;
+  }
+
+  // Bytes are written as a string of the characters with the same values, as Avro does
+  private void writeByteString(byte[] bytes, int offset, int length) {
+    ensureCapacity(2 + 6 * length);
+    byte[] buffer = this.buffer;
+    int size = this.size;
+    buffer[size++] = '"';
+    for (int i = offset; i < offset + length; i++) {
+      int c = bytes[i] & 0xFF;
+      if (c >= 0x80) {
+        buffer[size++] = (byte) (0xC0 | (c >> 6));
+        buffer[size++] = (byte) (0x80 | (c & 0x3F));
+      } else if (ESCAPES[c] == 0) {
+        buffer[size++] = (byte) c;
+      } else {
+        size = escape(buffer, size, c);
+      }
+    }
+    buffer[size++] = '"';
+    this.size = size;
+  }
+
+  private static int escape(byte[] buffer, int size, int c) {
+    byte escape = ESCAPES[c];
+    buffer[size++] = '\\';
+    buffer[size++] = escape;
+    if (escape == 'u') {
+      buffer[size++] = '0';
+      buffer[size++] = '0';
+      buffer[size++] = HEX[c >> 4];
+      buffer[size++] = HEX[c & 0xF];
+    }
+    return size;
+  }
+
+  private static byte[] ascii(String string) {
+    return string.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = 0;
+    for (byte[] part : parts) {
+      length += part.length;
+    }
+    byte[] result = new byte[length];
+    int offset = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, result, offset, part.length);
+      offset += part.length;
+    }
+    return result;
+  }
+
+  private abstract class ValueWriter {
+    abstract void write(Object value);
+  }
+
+  private class NullWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      writeBytes(NULL);
+    }
+  }
+
+  private class BooleanWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      writeBytes((Boolean) value ? TRUE : FALSE);
+    }
+  }
+
+  private class IntegralWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      writeLong(((Number) value).longValue());
+    }
+  }
+
+  private class FloatWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      writeDouble((Float) value, true);
+    }
+  }
+
+  private class DoubleWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      writeDouble((Double) value, false);
+    }
+  }
+
+  // Strings, and enum symbols, whose string form is the symbol itself; other character sequences
+  // (like Utf8) are converted to a string once rather than read a character at a time
+  private class StringWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      writeString(value.toString());
+    }
+  }
+
+  private class BytesWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      ByteBuffer bytes = (ByteBuffer) value;
+      if (bytes.hasArray()) {
+        writeByteString(
+            bytes.array(),
+            bytes.arrayOffset() + bytes.position(),
+            bytes.remaining()
+        );
+      } else {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        writeByteString(copy, 0, copy.length);
+      }
+    }
+  }
+
+  private class FixedWriter extends ValueWriter {
+    @Override
+    void write(Object value) {
+      byte[] bytes = ((GenericFixed) value).bytes();
+      writeByteString(bytes, 0, bytes.length);
+    }
+  }
+
+  private class ArrayWriter extends ValueWriter {
+    private ValueWriter elements;
+
+    @Override
+    void write(Object value) {
+      ensureCapacity(1);
+      buffer[size++] = '[';
+      boolean first = true;
+      for (Object element : (Collection<?>) value) {
+        if (!first) {
+          ensureCapacity(1);
+          buffer[size++] = ',';
+        }
+        elements.write(element);
+        first = false;
+      }
+      ensureCapacity(1);
+      buffer[size++] = ']';
+    }
+  }
+
+  private class MapWriter extends ValueWriter {
+    private ValueWriter values;
+
+    @Override
+    void write(Object value) {
+      ensureCapacity(1);
+      buffer[size++] = '{';
+      boolean first = true;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (!first) {
+          ensureCapacity(1);
+          buffer[size++] = ',';
+        }
+        writeString(entry.getKey().toString());
+        ensureCapacity(1);
+        buffer[size++] = ':';
+        values.write(entry.getValue());
+        first = false;
+      }
+      ensureCapacity(1);
+      buffer[size++] = '}';
+    }
+  }
+
+  private class RecordWriter extends ValueWriter {
+    private final byte[][] names;
+    private final ValueWriter[] fields;
+
+    public RecordWriter(int numFields) {
+      this.names = new byte[numFields][];
+      this.fields = new ValueWriter[numFields];
+    }
+
+    @Override
+    void write(Object value) {
+      IndexedRecord record = (IndexedRecord) value;
+      ensureCapacity(1);
+      buffer[size++] = '{';
+      for (int i = 0; i < fields.length; i++) {
+        writeBytes(names[i]);
+        fields[i].write(record.get(i));
+      }
+      ensureCapacity(1);
+      buffer[size++] = '}';
+    }
+  }
+
+  private class UnionWriter extends ValueWriter {
+    private final Schema[] schemas;
+    private final ValueWriter[] branches;
+    // For each branch, the opening of the object the value is wrapped in, or null if it isn't
+    private final byte[][] labels;
+
+    public UnionWriter(List<Schema> schemas) {
+      this.schemas = schemas.toArray(new Schema[0]);
+      this.branches = new ValueWriter[schemas.size()];
+      this.labels = new byte[schemas.size()][];
+    }
+
+    @Override
+    void write(Object value) {
+      for (int i = 0; i < schemas.length; i++) {
+        if (matches(schemas[i], value)) {
+          if (labels[i] == null) {
+            branches[i].write(value);
+          } else {
+            writeBytes(labels[i]);
+            branches[i].write(value);
+            ensureCapacity(1);
+            buffer[size++] = '}';
+          }
+          return;
+        }
+      }
+      throw new RuntimeException(String.format(
+          "Generated value %s does not match any branch of union %s",
+          value,
+          Arrays.toString(schemas)
+      ));
+    }
+  }
+}
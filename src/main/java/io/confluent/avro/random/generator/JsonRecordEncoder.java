@@ -0,0 +1,49 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.IOException;
+
+/**
+ * Encodes records in Avro's JSON encoding, either prettified or one record per line.
+ */
+class JsonRecordEncoder implements RecordEncoder {
+
+  private final Schema schema;
+  private final boolean pretty;
+
+  public JsonRecordEncoder(Schema schema, boolean pretty) {
+    this.schema = schema;
+    this.pretty = pretty;
+  }
+
+  @Override
+  public void encode(Generator generator, int count, EncodedRecords records) throws IOException {
+    // A fresh encoder doesn't write a separator before its first record, which lets batches of
+    // records encoded on different threads be joined with JsonRecordSink.SEPARATOR
+    Encoder encoder = EncoderFactory.get().jsonEncoder(schema, records, pretty);
+    for (int i = 0; i < count; i++) {
+      generator.generateTo(encoder);
+      encoder.flush();
+      records.endRecord();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes JSON-encoded records to a stream, separated the same way Avro's JSON encoder separates
+ * consecutive records, and followed by a single newline.
+ */
+class JsonRecordSink implements RecordSink {
+
+  static final byte[] SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final OutputStream output;
+  private boolean empty;
+
+  public JsonRecordSink(OutputStream output) {
+    this.output = output;
+    this.empty = true;
+  }
+
+  @Override
+  public void write(EncodedRecords records) throws IOException {
+    if (records.size() == 0) {
+      return;
+    }
+    // Every record but the first in an encoded batch starts with a separator, and so does a batch
+    // split off from the middle of one, which would otherwise start a file with an empty line
+    int skip = startsWithSeparator(records) ? SEPARATOR.length : 0;
+    if (!empty) {
+      output.write(SEPARATOR);
+    }
+    records.writeTo(output, skip);
+    empty = false;
+  }
+
+  private static boolean startsWithSeparator(EncodedRecords records) {
+    ByteBuffer first = records.record(0);
+    if (first.remaining() < SEPARATOR.length) {
+      return false;
+    }
+    for (int i = 0; i < SEPARATOR.length; i++) {
+      if (first.get(first.position() + i) != SEPARATOR[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (OutputStream output = this.output) {
+      output.write('\n');
+    }
+  }
+}
@@ -16,18 +16,25 @@
 
 package io.confluent.avro.random.generator;
 
-import org.apache.avro.file.DataFileWriter;
-import org.apache.avro.generic.GenericDatumWriter;
-import org.apache.avro.io.DatumWriter;
-import org.apache.avro.io.Encoder;
-import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /* TODO:  Find a good argument parser that doesn't strip double quotes off of arguments and allows
           for mutually exclusive options to cancel each other out without error */
@@ -49,15 +56,64 @@ public class Main {
   public static final String JSON_SHORT_FLAG = "-j";
   public static final String JSON_LONG_FLAG = "--json";
 
+  public static final String JSON_LINES_LONG_FLAG = "--json-lines";
+
+  public static final String PLAIN_UNIONS_LONG_FLAG = "--plain-unions";
+
   public static final String BINARY_SHORT_FLAG = "-b";
   public static final String BINARY_LONG_FLAG = "--binary";
 
+  public static final String FRAMED_LONG_FLAG = "--framed";
+
+  public static final String SINGLE_OBJECT_LONG_FLAG = "--single-object";
+
+  public static final String SCHEMA_ID_LONG_FLAG = "--schema-id";
+
+  public static final String KEY_SCHEMA_FILE_LONG_FLAG = "--key-schema-file";
+
+  public static final String KEY_SCHEMA_ID_LONG_FLAG = "--key-schema-id";
+
+  public static final String KEY_OUTPUT_LONG_FLAG = "--key-output";
+
   public static final String ITERATIONS_SHORT_FLAG = "-i";
   public static final String ITERATIONS_LONG_FLAG = "--iterations";
 
+  public static final String DURATION_SHORT_FLAG = "-d";
+  public static final String DURATION_LONG_FLAG = "--duration";
+
   public static final String OUTPUT_FILE_SHORT_FLAG = "-o";
   public static final String OUTPUT_FILE_LONG_FLAG = "--output";
 
+  public static final String CODEC_LONG_FLAG = "--codec";
+
+  public static final String SYNC_INTERVAL_LONG_FLAG = "--sync-interval";
+
+  public static final String FILES_LONG_FLAG = "--files";
+
+  public static final String MAX_FILE_SIZE_LONG_FLAG = "--max-file-size";
+
+  public static final String MAX_RECORDS_PER_FILE_LONG_FLAG = "--max-records-per-file";
+
+  public static final String BUFFER_SIZE_LONG_FLAG = "--buffer-size";
+
+  public static final String PREALLOCATE_LONG_FLAG = "--preallocate";
+
+  public static final String THREADS_SHORT_FLAG = "-t";
+  public static final String THREADS_LONG_FLAG = "--threads";
+
+  public static final String UNORDERED_SHORT_FLAG = "-u";
+  public static final String UNORDERED_LONG_FLAG = "--unordered";
+
+  public static final String STATS_LONG_FLAG = "--stats";
+
+  public static final String STATS_JSON_LONG_FLAG = "--stats-json";
+
+  public static final String RATE_LONG_FLAG = "--rate";
+
+  public static final String BURST_LONG_FLAG = "--burst";
+
+  public static final String PROFILE_LONG_FLAG = "--profile";
+
   public static final String HELP_SHORT_FLAG_1 = "-?";
   public static final String HELP_SHORT_FLAG_2 = "-h";
   public static final String HELP_LONG_FLAG = "--help";
@@ -65,6 +121,22 @@ public class Main {
   private static final boolean PRETTY_FORMAT = true;
   private static final boolean COMPACT_FORMAT = false;
 
+  private static final long STATS_INTERVAL_MILLIS = 1000;
+
+  // How often output is flushed when generating indefinitely or for a given duration
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long UNBOUNDED_ITERATIONS = -1;
+
+  private static final int DEFAULT_SCHEMA_ID = 1;
+
+  private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+)(ms|s|m|h|d)?");
+  private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+)([kKmMgG]?)");
+
+  // The bounds Avro places on the sync interval of a container file
+  private static final long MIN_SYNC_INTERVAL = 32;
+  private static final long MAX_SYNC_INTERVAL = 1 << 30;
+
   private static final boolean JSON_ENCODING = true;
   private static final boolean BINARY_ENCODING = false;
 
@@ -79,9 +151,39 @@ public class Main {
     boolean jsonFormat = PRETTY_FORMAT;
 
     boolean encoding = JSON_ENCODING;
+    boolean jsonLines = false;
+    boolean plainUnions = false;
+    boolean framed = false;
+    boolean singleObject = false;
+    int schemaId = DEFAULT_SCHEMA_ID;
+    String keySchemaFile = null;
+    int keySchemaId = DEFAULT_SCHEMA_ID;
+    String keyOutputFile = null;
 
     long iterations = 1;
+    boolean iterationsGiven = false;
+    long duration = -1;
     String outputFile = null;
+    int bufferSize = ChannelOutputStream.DEFAULT_BUFFER_SIZE;
+    long preallocate = 0;
+
+    int files = 1;
+    long maxFileSize = 0;
+    long maxRecordsPerFile = 0;
+
+    String codec = DataFileConstants.NULL_CODEC;
+    int syncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
+
+    int threads = 1;
+    boolean ordered = true;
+
+    boolean stats = false;
+    boolean statsJson = false;
+
+    GenerationProfiler profiler = null;
+
+    double rate = 0;
+    long burst = 0;
 
     Iterator<String> argv = Arrays.asList(args).iterator();
     while (argv.hasNext()) {
@@ -108,19 +210,105 @@ public class Main {
         case JSON_SHORT_FLAG:
         case JSON_LONG_FLAG:
           encoding = JSON_ENCODING;
+          jsonLines = false;
+          framed = false;
+          singleObject = false;
+          break;
+        case JSON_LINES_LONG_FLAG:
+          encoding = JSON_ENCODING;
+          jsonLines = true;
+          framed = false;
+          singleObject = false;
+          break;
+        case PLAIN_UNIONS_LONG_FLAG:
+          plainUnions = true;
           break;
         case BINARY_SHORT_FLAG:
         case BINARY_LONG_FLAG:
           encoding = BINARY_ENCODING;
+          framed = false;
+          singleObject = false;
+          break;
+        case FRAMED_LONG_FLAG:
+          encoding = BINARY_ENCODING;
+          framed = true;
+          singleObject = false;
+          break;
+        case SINGLE_OBJECT_LONG_FLAG:
+          encoding = BINARY_ENCODING;
+          framed = true;
+          singleObject = true;
+          break;
+        case SCHEMA_ID_LONG_FLAG:
+          schemaId = parseSchemaId(nextArg(argv, flag), flag);
+          break;
+        case KEY_SCHEMA_FILE_LONG_FLAG:
+          keySchemaFile = nextArg(argv, flag);
+          break;
+        case KEY_SCHEMA_ID_LONG_FLAG:
+          keySchemaId = parseSchemaId(nextArg(argv, flag), flag);
+          break;
+        case KEY_OUTPUT_LONG_FLAG:
+          keyOutputFile = nextArg(argv, flag);
           break;
         case ITERATIONS_SHORT_FLAG:
         case ITERATIONS_LONG_FLAG:
           iterations = parseIterations(nextArg(argv, flag), flag);
+          iterationsGiven = true;
+          break;
+        case DURATION_SHORT_FLAG:
+        case DURATION_LONG_FLAG:
+          duration = parseDuration(nextArg(argv, flag), flag);
           break;
         case OUTPUT_FILE_SHORT_FLAG:
         case OUTPUT_FILE_LONG_FLAG:
           outputFile = nextArg(argv, flag);
           break;
+        case FILES_LONG_FLAG:
+          files = parseFiles(nextArg(argv, flag), flag);
+          break;
+        case MAX_FILE_SIZE_LONG_FLAG:
+          maxFileSize = parseSize(nextArg(argv, flag), flag, Long.MAX_VALUE);
+          break;
+        case MAX_RECORDS_PER_FILE_LONG_FLAG:
+          maxRecordsPerFile = parseMaxRecordsPerFile(nextArg(argv, flag), flag);
+          break;
+        case BUFFER_SIZE_LONG_FLAG:
+          bufferSize = (int) parseSize(nextArg(argv, flag), flag, Integer.MAX_VALUE);
+          break;
+        case PREALLOCATE_LONG_FLAG:
+          preallocate = parseSize(nextArg(argv, flag), flag, Long.MAX_VALUE);
+          break;
+        case CODEC_LONG_FLAG:
+          codec = parseCodec(nextArg(argv, flag), flag);
+          break;
+        case SYNC_INTERVAL_LONG_FLAG:
+          syncInterval = parseSyncInterval(nextArg(argv, flag), flag);
+          break;
+        case THREADS_SHORT_FLAG:
+        case THREADS_LONG_FLAG:
+          threads = parseThreads(nextArg(argv, flag), flag);
+          break;
+        case UNORDERED_SHORT_FLAG:
+        case UNORDERED_LONG_FLAG:
+          ordered = false;
+          break;
+        case STATS_LONG_FLAG:
+          stats = true;
+          break;
+        case STATS_JSON_LONG_FLAG:
+          stats = true;
+          statsJson = true;
+          break;
+        case RATE_LONG_FLAG:
+          rate = parseRate(nextArg(argv, flag), flag);
+          break;
+        case BURST_LONG_FLAG:
+          burst = parseBurst(nextArg(argv, flag), flag);
+          break;
+        case PROFILE_LONG_FLAG:
+          profiler = new GenerationProfiler(parseSamplingInterval(nextArg(argv, flag), flag));
+          break;
         case HELP_SHORT_FLAG_1:
         case HELP_SHORT_FLAG_2:
         case HELP_LONG_FLAG:
@@ -132,49 +320,212 @@ public class Main {
       }
     }
 
-    Generator generator = null;
+    boolean split = files > 1 || maxFileSize > 0 || maxRecordsPerFile > 0;
+    if (split && (outputFile == null || outputFile.equals("-"))) {
+      System.err.printf(
+          "%s: %s, %s and %s require an output file to be given with %s%n%n",
+          PROGRAM_NAME,
+          FILES_LONG_FLAG,
+          MAX_FILE_SIZE_LONG_FLAG,
+          MAX_RECORDS_PER_FILE_LONG_FLAG,
+          OUTPUT_FILE_SHORT_FLAG
+      );
+      usage(1);
+    }
+
+    if ((keySchemaFile != null || keyOutputFile != null)
+        && (!framed || keySchemaFile == null || keyOutputFile == null)) {
+      System.err.printf(
+          "%s: %s and %s must be given together, and only with %s or %s%n%n",
+          PROGRAM_NAME,
+          KEY_SCHEMA_FILE_LONG_FLAG,
+          KEY_OUTPUT_LONG_FLAG,
+          FRAMED_LONG_FLAG,
+          SINGLE_OBJECT_LONG_FLAG
+      );
+      usage(1);
+    }
+
+    Schema generatorSchema = null;
+    Schema keySchema = null;
     try {
-      generator = getGenerator(schema, schemaFile);
+      generatorSchema = getSchema(schema, schemaFile);
+      if (keySchemaFile != null) {
+        keySchema = new Schema.Parser().parse(new File(keySchemaFile));
+      }
     } catch (IOException ioe) {
       System.err.println("Error occurred while trying to read schema file");
       System.exit(1);
     }
 
-    DatumWriter<Object> dataWriter = new GenericDatumWriter<>(generator.schema());
-    if (encoding == JSON_ENCODING) {
-      try (OutputStream output = getOutput(outputFile)) {
-        Encoder encoder = EncoderFactory.get().jsonEncoder(generator.schema(), output, jsonFormat);
-        for (int i = 0; i < iterations; i++) {
-          dataWriter.write(generator.generate(), encoder);
-        }
-        encoder.flush();
-        output.write('\n');
-      } catch (IOException ioe) {
-        System.err.println(
-            "Error occurred while trying to write to output file: " + ioe.getLocalizedMessage()
+    DataFileFormat dataFileFormat = new DataFileFormat(codec, syncInterval);
+    FramedFormat framedFormat = null;
+    if (framed) {
+      // Single-object fingerprints are of the schemas as given, not of the one generated
+      framedFormat = singleObject
+          ? FramedFormat.singleObject(generatorSchema, keySchema)
+          : FramedFormat.wireFormat(schemaId, keySchema, keySchemaId);
+      generatorSchema = framedFormat.generatedSchema(generatorSchema);
+    }
+    // Options files and regexes are parsed once here, instead of once for each worker
+    GeneratorTemplate template = GeneratorTemplate.compile(generatorSchema);
+    Supplier<RecordEncoder> encoders =
+        getEncoders(encoding, generatorSchema, jsonFormat, jsonLines, plainUnions, dataFileFormat,
+            framedFormat);
+
+    if (duration >= 0 && !iterationsGiven) {
+      iterations = UNBOUNDED_ITERATIONS;
+    }
+    boolean streaming = iterations == UNBOUNDED_ITERATIONS || duration >= 0;
+    if (iterations == UNBOUNDED_ITERATIONS) {
+      iterations = Long.MAX_VALUE;
+    }
+
+    GenerationStats generationStats =
+        stats ? new GenerationStats(streaming ? -1 : iterations, System.err) : null;
+    RatePacer pacer = null;
+    int recordsPerChunk = ParallelGeneration.RECORDS_PER_CHUNK;
+    if (rate > 0) {
+      // Write a chunk of records about once a millisecond, so they're spread out evenly
+      recordsPerChunk = (int) Math.max(1, Math.min(rate / 1000, recordsPerChunk));
+      if (burst <= 0) {
+        burst = (long) Math.max(Math.ceil(rate), recordsPerChunk);
+      }
+      recordsPerChunk = (int) Math.min(recordsPerChunk, burst);
+      pacer = new RatePacer(rate, burst);
+    }
+    // Chunks are split between files, unless each is made up of compressed blocks
+    boolean splitChunks =
+        encoding == JSON_ENCODING || framedFormat != null || dataFileFormat.hasSeparateRecords();
+    if (maxRecordsPerFile > 0 && !splitChunks) {
+      // Files then only ever end between chunks, so for every file to hold exactly as many records
+      // as asked, chunks have to divide them evenly
+      int divisor = largestDivisor(maxRecordsPerFile, recordsPerChunk);
+      if (divisor < recordsPerChunk / 8) {
+        System.err.printf(
+            "%s: warning: compressed blocks of only %d records fit %s %d evenly, which is slow;"
+              + " a limit with a divisor closer to %d would be faster%n",
+            PROGRAM_NAME,
+            divisor,
+            MAX_RECORDS_PER_FILE_LONG_FLAG,
+            maxRecordsPerFile,
+            recordsPerChunk
         );
-        System.exit(1);
       }
-    } else {
-      try (DataFileWriter<Object> dataFileWriter =
-               new DataFileWriter<>(dataWriter).create(generator.schema(), getOutput(outputFile))) {
-        for (int i = 0; i < iterations; i++) {
-          dataFileWriter.append(generator.generate());
+      recordsPerChunk = divisor;
+    }
+    StopSignal stop = new StopSignal(duration);
+    // Stop cleanly on SIGTERM, so that the output is flushed and (for binary encoding) the
+    // container file ends with a complete block
+    stop.stopOnShutdown();
+    boolean failed = false;
+    try {
+      List<RecordSink> sinks = new ArrayList<>(files);
+      try {
+        for (int file = 0; file < files; file++) {
+          RecordSink sink;
+          if (split) {
+            // Each writer takes every files-th number, so numbers are unique without coordination
+            sink = new RollingRecordSink(
+                getFiles(
+                    encoding,
+                    jsonLines,
+                    generatorSchema,
+                    outputFile,
+                    keyOutputFile,
+                    bufferSize,
+                    preallocate,
+                    dataFileFormat,
+                    framedFormat,
+                    generationStats
+                ),
+                file,
+                files,
+                maxRecordsPerFile,
+                maxFileSize,
+                splitChunks
+            );
+          } else {
+            sink = getSink(
+                encoding,
+                jsonLines,
+                generatorSchema,
+                getOutput(outputFile, bufferSize, preallocate),
+                keyOutputFile != null ? getOutput(keyOutputFile, bufferSize, 0) : null,
+                dataFileFormat,
+                framedFormat,
+                generationStats
+            );
+          }
+          sinks.add(wrapSink(sink, generationStats, pacer, streaming));
         }
+        // Even with a single thread, records are generated on a worker so that generating them
+        // overlaps with writing them out
+        ParallelGeneration generation =
+            new ParallelGeneration(template, threads, ordered, profiler, recordsPerChunk);
+        if (generationStats != null) {
+          generationStats.watch(generation);
+          generationStats.start(STATS_INTERVAL_MILLIS);
+        }
+        generation.run(iterations, encoders, sinks, stop);
       } catch (IOException ioe) {
         System.err.println(
             "Error occurred while trying to write to output file: " + ioe.getLocalizedMessage()
         );
-        System.exit(1);
+        failed = true;
+      } finally {
+        try {
+          close(sinks);
+        } catch (IOException ioe) {
+          System.err.println(
+              "Error occurred while trying to close output file: " + ioe.getLocalizedMessage()
+          );
+          failed = true;
+        }
       }
+      if (!failed) {
+        report(pacer, generationStats, statsJson, profiler);
+      }
+    } finally {
+      stop.finished();
+    }
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  private static void report(
+      RatePacer pacer,
+      GenerationStats generationStats,
+      boolean statsJson,
+      GenerationProfiler profiler) {
+    if (pacer != null) {
+      System.err.printf(
+          Locale.ROOT,
+          "%s: achieved %.1f records/s against a target of %.1f records/s%n",
+          PROGRAM_NAME,
+          pacer.achievedRate(),
+          pacer.rate()
+      );
+    }
+    if (generationStats != null) {
+      generationStats.finish(statsJson);
+    }
+    if (profiler != null) {
+      profiler.report(System.err);
     }
   }
 
   private static long parseIterations(String arg, String flag) {
     try {
       long result = Long.parseLong(arg);
-      if (result < 0) {
-        System.err.printf("%s: %s: argument cannot be negative%n", PROGRAM_NAME, flag);
+      if (result < 0 && result != UNBOUNDED_ITERATIONS) {
+        System.err.printf(
+            "%s: %s: argument cannot be negative, except for %d%n",
+            PROGRAM_NAME,
+            flag,
+            UNBOUNDED_ITERATIONS
+        );
         usage(1);
       }
       return result;
@@ -190,6 +541,228 @@ public class Main {
     return 0L;
   }
 
+  private static int parseThreads(String arg, String flag) {
+    try {
+      int result = Integer.parseInt(arg);
+      if (result < 1) {
+        System.err.printf("%s: %s: argument must be at least 1%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0;
+  }
+
+  private static int parseFiles(String arg, String flag) {
+    try {
+      int result = Integer.parseInt(arg);
+      if (result < 1) {
+        System.err.printf("%s: %s: argument must be at least 1%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0;
+  }
+
+  private static long parseMaxRecordsPerFile(String arg, String flag) {
+    try {
+      long result = Long.parseLong(arg);
+      if (result < 1) {
+        System.err.printf("%s: %s: argument must be at least 1%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0L;
+  }
+
+  private static int parseSchemaId(String arg, String flag) {
+    try {
+      int result = Integer.parseInt(arg);
+      if (result < 0) {
+        System.err.printf("%s: %s: argument cannot be negative%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0;
+  }
+
+  private static long parseDuration(String arg, String flag) {
+    Matcher matcher = DURATION_PATTERN.matcher(arg);
+    if (!matcher.matches()) {
+      System.err.printf(
+          "%s: %s: argument must be a number followed by one of ms, s, m, h or d%n",
+          PROGRAM_NAME,
+          flag
+      );
+      usage(1);
+    }
+    long amount;
+    try {
+      amount = Long.parseLong(matcher.group(1));
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument is too large%n", PROGRAM_NAME, flag);
+      usage(1);
+      return 0L;
+    }
+    String unit = matcher.group(2);
+    switch (unit == null ? "s" : unit) {
+      case "ms":
+        return TimeUnit.MILLISECONDS.toNanos(amount);
+      case "m":
+        return TimeUnit.MINUTES.toNanos(amount);
+      case "h":
+        return TimeUnit.HOURS.toNanos(amount);
+      case "d":
+        return TimeUnit.DAYS.toNanos(amount);
+      default:
+        return TimeUnit.SECONDS.toNanos(amount);
+    }
+  }
+
+  private static String parseCodec(String arg, String flag) {
+    try {
+      CodecFactory.fromString(arg);
+    } catch (AvroRuntimeException are) {
+      System.err.printf(
+          "%s: %s: argument must be one of %s, %s, %s, %s, %s or %s%n",
+          PROGRAM_NAME,
+          flag,
+          DataFileConstants.NULL_CODEC,
+          DataFileConstants.DEFLATE_CODEC,
+          DataFileConstants.SNAPPY_CODEC,
+          DataFileConstants.BZIP2_CODEC,
+          DataFileConstants.XZ_CODEC,
+          DataFileConstants.ZSTANDARD_CODEC
+      );
+      usage(1);
+    }
+    return arg;
+  }
+
+  private static int parseSyncInterval(String arg, String flag) {
+    long result = parseSize(arg, flag, MAX_SYNC_INTERVAL);
+    if (result < MIN_SYNC_INTERVAL) {
+      System.err.printf(
+          "%s: %s: argument must be at least %d%n",
+          PROGRAM_NAME,
+          flag,
+          MIN_SYNC_INTERVAL
+      );
+      usage(1);
+    }
+    return (int) result;
+  }
+
+  private static long parseSize(String arg, String flag, long max) {
+    Matcher matcher = SIZE_PATTERN.matcher(arg);
+    if (!matcher.matches()) {
+      System.err.printf(
+          "%s: %s: argument must be a number, optionally followed by one of k, m or g%n",
+          PROGRAM_NAME,
+          flag
+      );
+      usage(1);
+    }
+    int shift;
+    switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+      case "k":
+        shift = 10;
+        break;
+      case "m":
+        shift = 20;
+        break;
+      case "g":
+        shift = 30;
+        break;
+      default:
+        shift = 0;
+    }
+    try {
+      long result = Long.parseLong(matcher.group(1));
+      if (result < 1) {
+        System.err.printf("%s: %s: argument must be at least 1%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      if (result > max >> shift) {
+        System.err.printf("%s: %s: argument cannot be more than %d%n", PROGRAM_NAME, flag, max);
+        usage(1);
+      }
+      return result << shift;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument is too large%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0L;
+  }
+
+  private static double parseRate(String arg, String flag) {
+    try {
+      double result = Double.parseDouble(arg);
+      if (!(result > 0) || Double.isInfinite(result)) {
+        System.err.printf("%s: %s: argument must be positive%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0;
+  }
+
+  private static long parseBurst(String arg, String flag) {
+    try {
+      long result = Long.parseLong(arg);
+      if (result < 1) {
+        System.err.printf("%s: %s: argument must be at least 1%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0L;
+  }
+
+  private static int parseSamplingInterval(String arg, String flag) {
+    try {
+      int result = Integer.parseInt(arg);
+      if (result < 1) {
+        System.err.printf("%s: %s: argument must be at least 1%n", PROGRAM_NAME, flag);
+        usage(1);
+      }
+      return result;
+    } catch (NumberFormatException nfe) {
+      System.err.printf("%s: %s: argument must be a number%n", PROGRAM_NAME, flag);
+      usage(1);
+    }
+    System.exit(1);
+    return 0;
+  }
+
   private static String nextArg(Iterator<String> argv, String flag) {
     if (!argv.hasNext()) {
       System.err.printf("%s: %s: argument required%n", PROGRAM_NAME, flag);
@@ -206,16 +779,42 @@ public class Main {
     String header = String.format("%s: Generate random Avro data%n", PROGRAM_NAME);
 
     String summary = String.format(
-        "Usage: %s [%s <file> | %s <schema>] [%s | %s] [%s | %s] [%s <i>] [%s <file>]%n%n",
+        "Usage: %s [%s <file> | %s <schema>] [%s | %s | %s [%s]] [%s | %s] [%s <i>] [%s <file>]"
+            + " [%s <d>] [%s <size>] [%s <size>] [%s <n>] [%s] [%s <r> [%s <n>]] [%s | %s]"
+            + " [%s <n>] [%s <codec>] [%s <size>] [%s <n>] [%s <size>] [%s <n>]"
+            + " [%s [%s <id>] | %s] [%s <file> %s <file> [%s <id>]]%n%n",
         PROGRAM_NAME,
         SCHEMA_FILE_SHORT_FLAG,
         SCHEMA_SHORT_FLAG,
         JSON_SHORT_FLAG,
         BINARY_SHORT_FLAG,
+        JSON_LINES_LONG_FLAG,
+        PLAIN_UNIONS_LONG_FLAG,
         PRETTY_SHORT_FLAG,
         COMPACT_SHORT_FLAG,
         ITERATIONS_SHORT_FLAG,
-        OUTPUT_FILE_SHORT_FLAG
+        OUTPUT_FILE_SHORT_FLAG,
+        DURATION_SHORT_FLAG,
+        BUFFER_SIZE_LONG_FLAG,
+        PREALLOCATE_LONG_FLAG,
+        THREADS_SHORT_FLAG,
+        UNORDERED_SHORT_FLAG,
+        RATE_LONG_FLAG,
+        BURST_LONG_FLAG,
+        STATS_LONG_FLAG,
+        STATS_JSON_LONG_FLAG,
+        PROFILE_LONG_FLAG,
+        CODEC_LONG_FLAG,
+        SYNC_INTERVAL_LONG_FLAG,
+        FILES_LONG_FLAG,
+        MAX_FILE_SIZE_LONG_FLAG,
+        MAX_RECORDS_PER_FILE_LONG_FLAG,
+        FRAMED_LONG_FLAG,
+        SCHEMA_ID_LONG_FLAG,
+        SINGLE_OBJECT_LONG_FLAG,
+        KEY_SCHEMA_FILE_LONG_FLAG,
+        KEY_OUTPUT_LONG_FLAG,
+        KEY_SCHEMA_ID_LONG_FLAG
     );
 
     final String indentation = "    ";
@@ -237,6 +836,27 @@ public class Main {
             BINARY_LONG_FLAG,
             separation,
             "Encode outputted data in binary format"
+        ) + String.format(
+            "%s%s <size>:%s%s%n",
+            indentation,
+            BUFFER_SIZE_LONG_FLAG,
+            separation,
+            "Buffer up to <size> bytes of output before writing it, optionally followed by k, m or"
+              + " g (default is 1m)"
+        ) + String.format(
+            "%s%s <n>:%s%s%n",
+            indentation,
+            BURST_LONG_FLAG,
+            separation,
+            "Write up to <n> records at once to catch up when behind the rate given with "
+              + RATE_LONG_FLAG + " (default is one second's worth)"
+        ) + String.format(
+            "%s%s <codec>:%s%s%n",
+            indentation,
+            CODEC_LONG_FLAG,
+            separation,
+            "Compress blocks with <codec>, one of null, deflate, snappy, bzip2, xz or zstandard"
+              + " (default is null; has no effect if encoding is not binary)"
         ) + String.format(
             "%s%s, %s:%s%s%n",
             indentation,
@@ -244,6 +864,13 @@ public class Main {
             COMPACT_LONG_FLAG,
             separation,
             "Output each record on a single line of its own (has no effect if encoding is not JSON)"
+        ) + String.format(
+            "%s%s <d>, %s <d>:%s%s%n",
+            indentation,
+            DURATION_SHORT_FLAG,
+            DURATION_LONG_FLAG,
+            separation,
+            "Stop after <d>, given as a number followed by ms, s, m, h or d (default unit is s)"
         ) + String.format(
             "%s%s <file>, %s <file>:%s%s%n",
             indentation,
@@ -251,13 +878,28 @@ public class Main {
             SCHEMA_FILE_LONG_FLAG,
             separation,
             "Read the schema to spoof from <file>, or stdin if <file> is '-' (default is '-')"
+        ) + String.format(
+            "%s%s <n>:%s%s%n",
+            indentation,
+            FILES_LONG_FLAG,
+            separation,
+            "Write data to <n> files at once, numbered by inserting -00000, -00001 and so on before"
+              + " the extension of the output file (default is 1)"
+        ) + String.format(
+            "%s%s:%s%s%n",
+            indentation,
+            FRAMED_LONG_FLAG,
+            separation,
+            "Encode outputted data as messages in the Confluent wire format (a zero byte, the"
+              + " schema ID and the record in binary format), each prefixed with its length"
         ) + String.format(
             "%s%s <i>, %s <i>:%s%s%n",
             indentation,
             ITERATIONS_SHORT_FLAG,
             ITERATIONS_LONG_FLAG,
             separation,
-            "Output <i> iterations of spoofed data (default is 1)"
+            "Output <i> iterations of spoofed data, or keep going until stopped if <i> is -1"
+              + " (default is 1, or -1 if a duration is given)"
         ) + String.format(
             "%s%s, %s:%s%s%n",
             indentation,
@@ -265,6 +907,47 @@ public class Main {
             JSON_LONG_FLAG,
             separation,
             "Encode outputted data in JSON format (default)"
+        ) + String.format(
+            "%s%s:%s%s%n",
+            indentation,
+            JSON_LINES_LONG_FLAG,
+            separation,
+            "Encode outputted data as JSON Lines, one compact record per line, with a faster"
+              + " writer than the one used for JSON format"
+        ) + String.format(
+            "%s%s <file>:%s%s%n",
+            indentation,
+            KEY_OUTPUT_LONG_FLAG,
+            separation,
+            "Write keys to the file <file>, next to the values in the output file (requires "
+              + KEY_SCHEMA_FILE_LONG_FLAG + ")"
+        ) + String.format(
+            "%s%s <file>:%s%s%n",
+            indentation,
+            KEY_SCHEMA_FILE_LONG_FLAG,
+            separation,
+            "Also generate keys for the schema in <file> (requires " + FRAMED_LONG_FLAG + " or "
+              + SINGLE_OBJECT_LONG_FLAG + ")"
+        ) + String.format(
+            "%s%s <id>:%s%s%n",
+            indentation,
+            KEY_SCHEMA_ID_LONG_FLAG,
+            separation,
+            "Frame keys with the schema ID <id> (default is 1; has no effect without "
+              + FRAMED_LONG_FLAG + ")"
+        ) + String.format(
+            "%s%s <size>:%s%s%n",
+            indentation,
+            MAX_FILE_SIZE_LONG_FLAG,
+            separation,
+            "Start a new numbered file rather than write more than <size> bytes of records to one,"
+              + " optionally followed by k, m or g"
+        ) + String.format(
+            "%s%s <n>:%s%s%n",
+            indentation,
+            MAX_RECORDS_PER_FILE_LONG_FLAG,
+            separation,
+            "Start a new numbered file after every <n> records"
         ) + String.format(
             "%s%s <file>, %s <file>:%s%s%n",
             indentation,
@@ -272,6 +955,20 @@ public class Main {
             OUTPUT_FILE_LONG_FLAG,
             separation,
             "Write data to the file <file>, or stdout if <file> is '-' (default is '-')"
+        ) + String.format(
+            "%s%s:%s%s%n",
+            indentation,
+            PLAIN_UNIONS_LONG_FLAG,
+            separation,
+            "Write union values on their own rather than wrapped in an object naming their type, as"
+              + " Avro does (has no effect without " + JSON_LINES_LONG_FLAG + ")"
+        ) + String.format(
+            "%s%s <size>:%s%s%n",
+            indentation,
+            PREALLOCATE_LONG_FLAG,
+            separation,
+            "Extend the output file to <size> bytes up front, optionally followed by k, m or g, and"
+              + " truncate it to the size written at the end (has no effect when writing to stdout)"
         ) + String.format(
             "%s%s, %s:%s%s%n",
             indentation,
@@ -280,6 +977,20 @@ public class Main {
             separation,
             "Output each record in prettified format (has no effect if encoding is not JSON)"
               + "(default)"
+        ) + String.format(
+            "%s%s <n>:%s%s%n",
+            indentation,
+            PROFILE_LONG_FLAG,
+            separation,
+            "Measure the cost of one in every <n> values generated for each field, and print it to"
+              + " stderr at the end"
+        ) + String.format(
+            "%s%s <r>:%s%s%n",
+            indentation,
+            RATE_LONG_FLAG,
+            separation,
+            "Write data at a steady rate of <r> records per second instead of as fast as possible,"
+              + " and report the rate achieved to stderr at the end"
         ) + String.format(
             "%s%s <schema>, %s <schema>:%s%s%n",
             indentation,
@@ -287,6 +998,54 @@ public class Main {
             SCHEMA_LONG_FLAG,
             separation,
             "Spoof the schema <schema>"
+        ) + String.format(
+            "%s%s <id>:%s%s%n",
+            indentation,
+            SCHEMA_ID_LONG_FLAG,
+            separation,
+            "Frame values with the schema ID <id> (default is 1; has no effect without "
+              + FRAMED_LONG_FLAG + ")"
+        ) + String.format(
+            "%s%s:%s%s%n",
+            indentation,
+            SINGLE_OBJECT_LONG_FLAG,
+            separation,
+            "Encode outputted data in Avro's single-object encoding (the bytes C3 01, the schema's"
+              + " fingerprint and the record in binary format), each prefixed with its length"
+        ) + String.format(
+            "%s%s:%s%s%n",
+            indentation,
+            STATS_LONG_FLAG,
+            separation,
+            "Print throughput statistics to stderr every second, and a summary at the end"
+        ) + String.format(
+            "%s%s:%s%s%n",
+            indentation,
+            STATS_JSON_LONG_FLAG,
+            separation,
+            "Like " + STATS_LONG_FLAG + ", but print the summary at the end as a JSON object"
+        ) + String.format(
+            "%s%s <size>:%s%s%n",
+            indentation,
+            SYNC_INTERVAL_LONG_FLAG,
+            separation,
+            "Write blocks of about <size> uncompressed bytes, optionally followed by k, m or g"
+              + " (default is 64000; has no effect if encoding is not binary)"
+        ) + String.format(
+            "%s%s <n>, %s <n>:%s%s%n",
+            indentation,
+            THREADS_SHORT_FLAG,
+            THREADS_LONG_FLAG,
+            separation,
+            "Generate data on <n> threads in parallel (default is 1)"
+        ) + String.format(
+            "%s%s, %s:%s%s%n",
+            indentation,
+            UNORDERED_SHORT_FLAG,
+            UNORDERED_LONG_FLAG,
+            separation,
+            "Write data as soon as any thread has generated it, instead of in iteration order"
+              + " (has no effect with a single thread)"
         ) + "\n";
 
     String footer = String.format(
@@ -299,22 +1058,162 @@ public class Main {
     System.exit(exitValue);
   }
 
-  private static Generator getGenerator(String schema, String schemaFile) throws IOException {
+  private static Schema getSchema(String schema, String schemaFile) throws IOException {
+    Schema.Parser parser = new Schema.Parser();
     if (schema != null) {
-      return new Generator.Builder().schemaString(schema).build();
+      return parser.parse(schema);
     } else if (!schemaFile.equals("-")) {
-      return new Generator.Builder().schemaFile(new File(schemaFile)).build();
+      return parser.parse(new File(schemaFile));
     } else {
       System.err.println("Reading schema from stdin...");
-      return new Generator.Builder().schemaStream(System.in).build();
+      return parser.parse(System.in);
+    }
+  }
+
+  private static Supplier<RecordEncoder> getEncoders(
+      boolean encoding,
+      Schema schema,
+      boolean jsonFormat,
+      boolean jsonLines,
+      boolean plainUnions,
+      DataFileFormat dataFileFormat,
+      FramedFormat framedFormat) {
+    if (encoding == JSON_ENCODING && jsonLines) {
+      return () -> new JsonLinesRecordEncoder(schema, plainUnions);
+    } else if (encoding == JSON_ENCODING) {
+      return () -> new JsonRecordEncoder(schema, jsonFormat);
+    } else if (framedFormat != null) {
+      return framedFormat.encoders(schema);
+    } else {
+      return dataFileFormat.encoders();
     }
   }
 
-  private static OutputStream getOutput(String outputFile) throws IOException {
+  private static RecordSink getSink(
+      boolean encoding,
+      boolean jsonLines,
+      Schema schema,
+      OutputStream output,
+      OutputStream keyOutput,
+      DataFileFormat dataFileFormat,
+      FramedFormat framedFormat,
+      GenerationStats stats) throws IOException {
+    if (stats != null) {
+      output = stats.countBytes(output);
+      if (keyOutput != null) {
+        keyOutput = stats.countBytes(keyOutput);
+      }
+    }
+    if (encoding == JSON_ENCODING && jsonLines) {
+      return new JsonLinesRecordSink(output);
+    } else if (encoding == JSON_ENCODING) {
+      return new JsonRecordSink(output);
+    } else if (framedFormat != null) {
+      return framedFormat.sink(output, keyOutput);
+    } else {
+      return dataFileFormat.sink(schema, output);
+    }
+  }
+
+  private static RollingRecordSink.Files getFiles(
+      boolean encoding,
+      boolean jsonLines,
+      Schema schema,
+      String outputFile,
+      String keyOutputFile,
+      int bufferSize,
+      long preallocate,
+      DataFileFormat dataFileFormat,
+      FramedFormat framedFormat,
+      GenerationStats stats) {
+    return file -> getSink(
+        encoding,
+        jsonLines,
+        schema,
+        getOutput(numberFile(outputFile, file), bufferSize, preallocate),
+        keyOutputFile != null ? getOutput(numberFile(keyOutputFile, file), bufferSize, 0) : null,
+        dataFileFormat,
+        framedFormat,
+        stats
+    );
+  }
+
+  // Numbers an output file by inserting the number before its extension, as in data-00001.avro
+  private static String numberFile(String outputFile, int file) {
+    File path = new File(outputFile);
+    String name = path.getName();
+    int extension = name.lastIndexOf('.');
+    if (extension > 0) {
+      name = String.format(
+          Locale.ROOT,
+          "%s-%05d%s",
+          name.substring(0, extension),
+          file,
+          name.substring(extension)
+      );
+    } else {
+      name = String.format(Locale.ROOT, "%s-%05d", name, file);
+    }
+    return new File(path.getParentFile(), name).getPath();
+  }
+
+  private static RecordSink wrapSink(
+      RecordSink sink,
+      GenerationStats stats,
+      RatePacer pacer,
+      boolean streaming) {
+    if (stats != null) {
+      sink = stats.countRecords(sink);
+    }
+    if (streaming) {
+      sink = new FlushingRecordSink(sink, FLUSH_INTERVAL_NANOS);
+    }
+    // Paced outside of the statistics, so that waiting isn't counted as time spent writing
+    return pacer != null ? pacer.pace(sink) : sink;
+  }
+
+  private static void close(List<RecordSink> sinks) throws IOException {
+    IOException failure = null;
+    for (RecordSink sink : sinks) {
+      try {
+        sink.close();
+      } catch (IOException ioe) {
+        if (failure == null) {
+          failure = ioe;
+        } else {
+          failure.addSuppressed(ioe);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static int largestDivisor(long value, int max) {
+    for (int divisor = (int) Math.min(value, max); divisor > 1; divisor--) {
+      if (value % divisor == 0) {
+        return divisor;
+      }
+    }
+    return 1;
+  }
+
+  private static OutputStream getOutput(String outputFile, int bufferSize, long preallocate)
+      throws IOException {
     if (outputFile != null && !outputFile.equals("-")) {
-      return new FileOutputStream(outputFile);
+      return new ChannelOutputStream(
+          new FileOutputStream(outputFile).getChannel(),
+          bufferSize,
+          preallocate
+      );
     } else {
-      return System.out;
+      return new ChannelOutputStream(
+          new FileOutputStream(FileDescriptor.out).getChannel(),
+          bufferSize,
+          0
+      );
     }
   }
+
 }
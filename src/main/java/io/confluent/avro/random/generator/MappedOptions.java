@@ -0,0 +1,317 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+
+package io.confluent.avro.random.generator;
+
+import org.apache.avro.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The options in a binary-encoded options file, memory-mapped rather than read onto the heap.
+ * Opening the file only walks through it once to record the offset of each option; options are
+ * then handed out as their raw Avro binary encoding, to be decoded (or copied into binary output)
+ * only when they are actually chosen. Instances are immutable, and so may be shared between
+ * threads.
+ */
+final class MappedOptions {
+
+  // A single mapping can't be larger than this; bigger files are mapped in several segments, each
+  // beginning at the start of an option.
+  private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+  private final MappedByteBuffer[] segments;
+  private final long[] segmentStarts;
+  // The offset of each option in the file, followed by the offset of the end of the last option
+  private final long[] offsets;
+  // The number of bytes after each option that aren't part of it (i.e., its weight)
+  private final int trailer;
+  private final double[] weights;
+  private final int maxLength;
+
+  private MappedOptions(
+      MappedByteBuffer[] segments,
+      long[] segmentStarts,
+      long[] offsets,
+      int trailer,
+      double[] weights,
+      int maxLength) {
+    this.segments = segments;
+    this.segmentStarts = segmentStarts;
+    this.offsets = offsets;
+    this.trailer = trailer;
+    this.weights = weights;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Maps and indexes a binary options file.
+   * @param file The file to map.
+   * @param schema The schema of the options in the file.
+   * @param weighted Whether each option in the file is followed by its (double) weight.
+   * @return The mapped options.
+   * @throws IOException if the file can't be mapped.
+   */
+  public static MappedOptions map(File file, Schema schema, boolean weighted) throws IOException {
+    return map(file, schema, weighted, MAX_SEGMENT_SIZE);
+  }
+
+  // Segments are only ever smaller than the largest possible mapping in tests
+  static MappedOptions map(File file, Schema schema, boolean weighted, long maxSegmentSize)
+      throws IOException {
+    int trailer = weighted ? Double.BYTES : 0;
+    List<MappedByteBuffer> segments = new ArrayList<>();
+    long[] segmentStarts = new long[1];
+    long[] offsets = new long[1024];
+    double[] weights = weighted ? new double[1024] : null;
+    int count = 0;
+    int maxLength = 0;
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long segmentStart = 0;
+      MappedByteBuffer segment = mapSegment(channel, segmentStart, fileSize, maxSegmentSize);
+      segments.add(segment);
+      long optionStart = 0;
+      while (optionStart < fileSize) {
+        Skipper skipper = new Skipper(segment, optionStart - segmentStart);
+        // Whether the option, and its weight, end within the segment
+        boolean complete;
+        try {
+          skipper.skip(schema);
+          complete = skipper.position <= segment.limit() - trailer;
+        } catch (IndexOutOfBoundsException e) {
+          complete = false;
+        }
+        if (!complete) {
+          if (segmentStart + segment.limit() == fileSize) {
+            throw new RuntimeException(String.format(
+                "Options file '%s' ends in the middle of an option",
+                file
+            ));
+          }
+          if (optionStart == segmentStart) {
+            throw new RuntimeException(String.format(
+                "Options file '%s' contains an option larger than %d bytes",
+                file,
+                maxSegmentSize
+            ));
+          }
+          segmentStart = optionStart;
+          segment = mapSegment(channel, segmentStart, fileSize, maxSegmentSize);
+          segments.add(segment);
+          segmentStarts = Arrays.copyOf(segmentStarts, segments.size());
+          segmentStarts[segments.size() - 1] = segmentStart;
+          continue;
+        }
+        long optionEnd = segmentStart + skipper.position;
+        if (optionEnd + trailer == optionStart) {
+          throw new RuntimeException(String.format(
+              "Options file '%s' can't be mapped, since its options are empty when encoded",
+              file
+          ));
+        }
+
+        if (count + 1 == offsets.length) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
+          if (weighted) {
+            weights = Arrays.copyOf(weights, offsets.length);
+          }
+        }
+        if (weighted) {
+          weights[count] = segment.getDouble((int) (optionEnd - segmentStart));
+        }
+        offsets[count++] = optionStart;
+        maxLength = Math.max(maxLength, (int) (optionEnd - optionStart));
+        optionStart = optionEnd + trailer;
+      }
+      offsets[count] = optionStart;
+    }
+
+    if (count == 0) {
+      throw new RuntimeException(String.format("Options file '%s' is empty", file));
+    }
+    return new MappedOptions(
+        segments.toArray(new MappedByteBuffer[0]),
+        segmentStarts,
+        Arrays.copyOf(offsets, count + 1),
+        trailer,
+        weighted ? Arrays.copyOf(weights, count) : null,
+        maxLength
+    );
+  }
+
+  private static MappedByteBuffer mapSegment(
+      FileChannel channel,
+      long start,
+      long fileSize,
+      long maxSegmentSize) throws IOException {
+    long size = Math.min(maxSegmentSize, fileSize - start);
+    MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    // Avro encodes floats and doubles in little-endian byte order
+    segment.order(ByteOrder.LITTLE_ENDIAN);
+    return segment;
+  }
+
+  /**
+   * @return The number of options.
+   */
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @return The weight of each option, or null if the file isn't weighted.
+   */
+  public double[] weights() {
+    return weights;
+  }
+
+  /**
+   * @return The length of the longest encoded option.
+   */
+  public int maxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Copies the binary encoding of an option into a buffer.
+   * @param index The index of the option.
+   * @param buffer The buffer to copy into; must be at least {@link #maxLength()} bytes long.
+   * @return The length of the encoded option.
+   */
+  public int read(int index, byte[] buffer) {
+    long offset = offsets[index];
+    int length = (int) (offsets[index + 1] - offset) - trailer;
+    int segmentIndex = Arrays.binarySearch(segmentStarts, offset);
+    if (segmentIndex < 0) {
+      segmentIndex = -segmentIndex - 2;
+    }
+    MappedByteBuffer segment = segments[segmentIndex];
+    int position = (int) (offset - segmentStarts[segmentIndex]);
+    for (int i = 0; i < length; i++) {
+      buffer[i] = segment.get(position + i);
+    }
+    return length;
+  }
+
+  // Finds where an encoded datum ends, without decoding it
+  private static class Skipper {
+    private final MappedByteBuffer buffer;
+    private long position;
+
+    public Skipper(MappedByteBuffer buffer, long position) {
+      this.buffer = buffer;
+      this.position = position;
+    }
+
+    public void skip(Schema schema) {
+      switch (schema.getType()) {
+        case NULL:
+          break;
+        case BOOLEAN:
+          position += 1;
+          break;
+        case INT:
+        case LONG:
+        case ENUM:
+          readLong();
+          break;
+        case FLOAT:
+          position += Float.BYTES;
+          break;
+        case DOUBLE:
+          position += Double.BYTES;
+          break;
+        case FIXED:
+          position += schema.getFixedSize();
+          break;
+        case BYTES:
+        case STRING:
+          skipLength();
+          break;
+        case ARRAY:
+          skipBlocks(schema.getElementType(), false);
+          break;
+        case MAP:
+          skipBlocks(schema.getValueType(), true);
+          break;
+        case RECORD:
+          for (Schema.Field field : schema.getFields()) {
+            skip(field.schema());
+          }
+          break;
+        case UNION:
+          skip(schema.getTypes().get((int) readLong()));
+          break;
+        default:
+          throw new RuntimeException(String.format("Unexpected schema type: %s", schema.getType()));
+      }
+    }
+
+    private void skipBlocks(Schema itemSchema, boolean keyed) {
+      for (long count = readLong(); count != 0; count = readLong()) {
+        if (count < 0) {
+          // A negative count is followed by the size of the block in bytes
+          skipLength();
+          continue;
+        }
+        for (long i = 0; i < count; i++) {
+          if (keyed) {
+            skipLength();
+          }
+          skip(itemSchema);
+        }
+      }
+    }
+
+    // Skips over as many bytes as the length that's read says to
+    private void skipLength() {
+      long length = readLong();
+      if (length < 0) {
+        throw new RuntimeException(String.format("Invalid length in options file: %d", length));
+      }
+      if (length > buffer.limit() - position) {
+        throw new IndexOutOfBoundsException();
+      }
+      position += length;
+    }
+
+    private long readLong() {
+      long raw = 0;
+      for (int shift = 0; ; shift += 7) {
+        if (position >= buffer.limit() || shift >= Long.SIZE) {
+          throw new IndexOutOfBoundsException();
+        }
+        byte b = buffer.get((int) position++);
+        raw |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      return (raw >>> 1) ^ -(raw & 1);
+    }
+  }
+}
@@ -0,0 +1,356 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Generates records on one or more worker threads and writes them to one or more
+ * {@link RecordSink}s, so that generating and encoding records overlaps with writing them. A single
+ * sink is written to from the calling thread; several are written to concurrently, each from a
+ * writer thread of its own, with chunk {@code c} going to sink {@code c % sinks}. Workers encode
+ * into a small pool of reusable chunks each, which bounds how far ahead of the writers they can
+ * get.
+ *
+ * <p>The records to generate are split into chunks of a fixed size ({@link #RECORDS_PER_CHUNK},
+ * unless given otherwise); chunk {@code c} holds the records from generation
+ * {@code c * recordsPerChunk} onwards, and whichever
+ * worker produces it positions its own {@link Generator} at that generation first. Iterated values
+ * therefore come out exactly as they would from a single generator, regardless of the number of
+ * threads. When ordering is required, chunk {@code c} is produced by worker
+ * {@code c % threads} and every sink is written its chunks in order; otherwise workers claim
+ * chunks as they go and chunks are written to whichever sink is free as soon as they are ready.
+ *
+ * <p>The number of chunks waiting to be written and the time spent waiting on either side are
+ * tracked while records are generated: writers that wait a lot are held back by generation,
+ * while workers that wait a lot are held back by the output.
+ */
+class ParallelGeneration {
+
+  static final int RECORDS_PER_CHUNK = 1024;
+
+  // How many chunks each worker can have generated ahead of the writer
+  private static final int CHUNKS_PER_WORKER = 4;
+
+  private final GeneratorTemplate template;
+  private final int threads;
+  private final boolean ordered;
+  private final GenerationProfiler profiler;
+  private final int recordsPerChunk;
+
+  private volatile int writers = 1;
+
+  private final AtomicInteger queuedChunks = new AtomicInteger();
+  private final LongAdder writerWaitNanos = new LongAdder();
+  private final LongAdder workerWaitNanos = new LongAdder();
+
+  /**
+   * @param template The compiled schema that every worker builds its generator from.
+   * @param threads The number of threads to generate records on.
+   * @param ordered Whether records must be written in the order they were generated.
+   * @param profiler The profiler shared by every worker's generator, or null.
+   * @param recordsPerChunk The number of records in each chunk written to the sink.
+   */
+  public ParallelGeneration(
+      GeneratorTemplate template,
+      int threads,
+      boolean ordered,
+      GenerationProfiler profiler,
+      int recordsPerChunk) {
+    this.template = template;
+    this.threads = threads;
+    this.ordered = ordered;
+    this.profiler = profiler;
+    this.recordsPerChunk = recordsPerChunk;
+  }
+
+  /**
+   * Generate records, encode them and write them to the given sink.
+   * @param iterations The total number of records to generate.
+   * @param encoders Creates the encoder used by each worker.
+   * @param sink The sink to write all encoded records to.
+   * @param stop Checked before every chunk is written, to stop early.
+   * @throws IOException if an error occurs while encoding or writing records.
+   */
+  public void run(
+      long iterations,
+      Supplier<RecordEncoder> encoders,
+      RecordSink sink,
+      StopSignal stop) throws IOException {
+    run(iterations, encoders, Collections.singletonList(sink), stop);
+  }
+
+  /**
+   * Generate records, encode them and write them to the given sinks concurrently.
+   * @param iterations The total number of records to generate.
+   * @param encoders Creates the encoder used by each worker.
+   * @param sinks The sinks to spread the encoded records over.
+   * @param stop Checked before every chunk is written, to stop early.
+   * @throws IOException if an error occurs while encoding or writing records.
+   */
+  public void run(
+      long iterations,
+      Supplier<RecordEncoder> encoders,
+      List<RecordSink> sinks,
+      StopSignal stop) throws IOException {
+    writers = sinks.size();
+    long chunks = iterations / recordsPerChunk + (iterations % recordsPerChunk != 0 ? 1 : 0);
+    AtomicLong nextChunk = new AtomicLong();
+    AtomicLong nextWrite = new AtomicLong();
+    BlockingQueue<Chunk> unorderedChunks = new LinkedBlockingQueue<>();
+
+    Worker[] workers = new Worker[threads];
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, Main.PROGRAM_NAME + "-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ExecutorService writerExecutor = null;
+    try {
+      for (int i = 0; i < threads; i++) {
+        List<BlockingQueue<Chunk>> ready = new ArrayList<>(writers);
+        for (int w = 0; w < writers; w++) {
+          ready.add(ordered ? new LinkedBlockingQueue<>() : unorderedChunks);
+        }
+        workers[i] = new Worker(i, iterations, chunks, encoders.get(), nextChunk, ready);
+        executor.execute(workers[i]);
+      }
+
+      if (writers == 1) {
+        write(0, chunks, workers, unorderedChunks, nextWrite, sinks.get(0), stop);
+        return;
+      }
+      writerExecutor = Executors.newFixedThreadPool(writers, runnable -> {
+        Thread thread = new Thread(runnable, Main.PROGRAM_NAME + "-writer");
+        thread.setDaemon(true);
+        return thread;
+      });
+      CompletionService<Void> completion = new ExecutorCompletionService<>(writerExecutor);
+      for (int w = 0; w < writers; w++) {
+        int writer = w;
+        completion.submit(() -> {
+          write(writer, chunks, workers, unorderedChunks, nextWrite, sinks.get(writer), stop);
+          return null;
+        });
+      }
+      for (int w = 0; w < writers; w++) {
+        try {
+          completion.take().get();
+        } catch (ExecutionException e) {
+          // The remaining writers are interrupted on the way out
+          rethrow(e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for generated records");
+    } finally {
+      if (writerExecutor != null) {
+        writerExecutor.shutdownNow();
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return The number of worker threads.
+   */
+  public int threads() {
+    return threads;
+  }
+
+  /**
+   * @return The number of sinks written to concurrently, each by a writer of its own.
+   */
+  public int writers() {
+    return writers;
+  }
+
+  /**
+   * @return The number of chunks that have been generated but not yet written.
+   */
+  public int queuedChunks() {
+    return queuedChunks.get();
+  }
+
+  /**
+   * @return The total time writers have spent waiting for chunks to be generated, summed across
+   *     every writer.
+   */
+  public long writerWaitNanos() {
+    return writerWaitNanos.sum();
+  }
+
+  /**
+   * @return The total time workers have spent waiting for chunks to be written, summed across
+   *     every worker.
+   */
+  public long workerWaitNanos() {
+    return workerWaitNanos.sum();
+  }
+
+  private void write(
+      int writer,
+      long chunks,
+      Worker[] workers,
+      BlockingQueue<Chunk> unorderedChunks,
+      AtomicLong nextWrite,
+      RecordSink sink,
+      StopSignal stop) throws IOException, InterruptedException {
+    if (ordered) {
+      for (long c = writer; c < chunks && !stop.isStopped(); c += writers) {
+        write(workers[(int) (c % threads)].ready.get(writer), sink);
+      }
+    } else {
+      while (nextWrite.getAndIncrement() < chunks && !stop.isStopped()) {
+        write(unorderedChunks, sink);
+      }
+    }
+  }
+
+  private void write(BlockingQueue<Chunk> ready, RecordSink sink)
+      throws IOException, InterruptedException {
+    long waitStart = System.nanoTime();
+    Chunk chunk = ready.take();
+    writerWaitNanos.add(System.nanoTime() - waitStart);
+    queuedChunks.decrementAndGet();
+    rethrow(chunk.failure);
+    sink.write(chunk.records);
+    chunk.worker.free.add(chunk);
+  }
+
+  private static void rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new RuntimeException(failure);
+    }
+  }
+
+  private class Worker implements Runnable {
+    private final int index;
+    private final long iterations;
+    private final long chunks;
+    private final RecordEncoder encoder;
+    private final AtomicLong nextChunk;
+    // The chunks generated for each writer, in order
+    private final List<BlockingQueue<Chunk>> ready;
+    private final BlockingQueue<Chunk> free;
+
+    public Worker(
+        int index,
+        long iterations,
+        long chunks,
+        RecordEncoder encoder,
+        AtomicLong nextChunk,
+        List<BlockingQueue<Chunk>> ready) {
+      this.index = index;
+      this.iterations = iterations;
+      this.chunks = chunks;
+      this.encoder = encoder;
+      this.nextChunk = nextChunk;
+      this.ready = ready;
+      this.free = new ArrayBlockingQueue<>(CHUNKS_PER_WORKER);
+      for (int i = 0; i < CHUNKS_PER_WORKER; i++) {
+        free.add(new Chunk(this));
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        long chunk = claimChunk(-1);
+        if (chunk >= chunks) {
+          return;
+        }
+        Generator generator = new Generator.Builder()
+            .template(template)
+            .generation(chunk * recordsPerChunk)
+            .profiler(profiler)
+            .build();
+        long position = chunk * recordsPerChunk;
+        while (chunk < chunks) {
+          long start = chunk * recordsPerChunk;
+          if (position != start) {
+            generator.seek(start);
+          }
+          int count = (int) Math.min(recordsPerChunk, iterations - start);
+
+          long waitStart = System.nanoTime();
+          Chunk result = free.take();
+          workerWaitNanos.add(System.nanoTime() - waitStart);
+          result.records.reset();
+          encoder.encode(generator, count, result.records);
+          queuedChunks.incrementAndGet();
+          ready.get((int) (chunk % writers)).put(result);
+
+          position = start + count;
+          chunk = claimChunk(chunk);
+        }
+      } catch (InterruptedException e) {
+        // The writer has given up; nothing left to do
+      } catch (Throwable t) {
+        // Whichever writer waits on this worker next gives up
+        Chunk failure = new Chunk(this);
+        failure.failure = t;
+        for (BlockingQueue<Chunk> queue : ready) {
+          queuedChunks.incrementAndGet();
+          queue.add(failure);
+        }
+      }
+    }
+
+    private long claimChunk(long previous) {
+      if (ordered) {
+        return previous < 0 ? index : previous + threads;
+      } else {
+        return nextChunk.getAndIncrement();
+      }
+    }
+  }
+
+  private static class Chunk {
+    private final Worker worker;
+    private final EncodedRecords records;
+    private Throwable failure;
+
+    public Chunk(Worker worker) {
+      this.worker = worker;
+      this.records = new EncodedRecords();
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A source of randomness for a {@link Generator}. Unlike {@link Random}, implementations are not
+ * expected to be thread-safe, which lets them avoid synchronization on every value they produce;
+ * a random source should only ever be used by one generator at a time. Random sources created
+ * with the same seed produce the same sequence of values.
+ *
+ * <p>Only {@link #nextLong()} has to be implemented; every other method is derived from it by
+ * default, and may be overridden when a more efficient implementation is available.
+ */
+public interface RandomSource {
+
+  /**
+   * @return A uniformly distributed long value.
+   */
+  long nextLong();
+
+  /**
+   * @param bound The (exclusive) upper bound for the value. Must be positive.
+   * @return A uniformly distributed long value in the range [0, bound).
+   */
+  default long nextLong(long bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    // Rejects the values from the final, partial multiple of bound, as SplittableRandom does
+    long mask = bound - 1;
+    long r = nextLong() >>> 1;
+    for (long u = r; u - (r = u % bound) + mask < 0; u = nextLong() >>> 1) {
+      // try again
+    }
+    return r;
+  }
+
+  /**
+   * @return A uniformly distributed int value.
+   */
+  default int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  /**
+   * @param bound The (exclusive) upper bound for the value. Must be positive.
+   * @return A uniformly distributed int value in the range [0, bound).
+   */
+  default int nextInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    // Lemire's multiply-and-shift method; it only has to reject a value very rarely
+    long product = (nextLong() >>> 32) * bound;
+    long low = product & 0xffffffffL;
+    if (low < bound) {
+      long threshold = (0x100000000L - bound) % bound;
+      while (low < threshold) {
+        product = (nextLong() >>> 32) * bound;
+        low = product & 0xffffffffL;
+      }
+    }
+    return (int) (product >>> 32);
+  }
+
+  /**
+   * @return A uniformly distributed double value in the range [0.0, 1.0).
+   */
+  default double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * @return A uniformly distributed float value in the range [0.0, 1.0).
+   */
+  default float nextFloat() {
+    return (nextLong() >>> 40) * 0x1.0p-24f;
+  }
+
+  /**
+   * @return A uniformly distributed boolean value.
+   */
+  default boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+
+  /**
+   * Fill part of an array with random bytes.
+   * @param bytes The array to fill.
+   * @param offset The index of the first byte to fill.
+   * @param length The number of bytes to fill.
+   */
+  default void nextBytes(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    int i = offset;
+    for (; i + Long.BYTES <= end; i += Long.BYTES) {
+      long rnd = nextLong();
+      for (int n = 0; n < Long.BYTES; n++, rnd >>>= Byte.SIZE) {
+        bytes[i + n] = (byte) rnd;
+      }
+    }
+    if (i < end) {
+      for (long rnd = nextLong(); i < end; rnd >>>= Byte.SIZE) {
+        bytes[i++] = (byte) rnd;
+      }
+    }
+  }
+
+  /**
+   * Fill an array with random bytes.
+   * @param bytes The array to fill.
+   */
+  default void nextBytes(byte[] bytes) {
+    nextBytes(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Fill part of an array with uniformly distributed ASCII characters (0 to 127).
+   * @param bytes The array to fill.
+   * @param offset The index of the first character to fill.
+   * @param length The number of characters to fill.
+   */
+  default void nextAscii(byte[] bytes, int offset, int length) {
+    // Takes seven bits at a time out of each random long instead of drawing once per character
+    int end = offset + length;
+    while (offset < end) {
+      long rnd = nextLong();
+      for (int n = Math.min(end - offset, Long.SIZE / 7); n-- > 0; rnd >>>= 7) {
+        bytes[offset++] = (byte) (rnd & 0x7F);
+      }
+    }
+  }
+
+  /**
+   * Fill part of an array with uniformly distributed long values.
+   * @param longs The array to fill.
+   * @param offset The index of the first value to fill.
+   * @param length The number of values to fill.
+   */
+  default void nextLongs(long[] longs, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      longs[i] = nextLong();
+    }
+  }
+
+  /**
+   * Fill an array with uniformly distributed long values.
+   * @param longs The array to fill.
+   */
+  default void nextLongs(long[] longs) {
+    nextLongs(longs, 0, longs.length);
+  }
+
+  /**
+   * @return A new random source of the default kind, with an unpredictable seed.
+   */
+  static RandomSource create() {
+    return xoroshiro128PlusPlus(ThreadLocalRandom.current().nextLong());
+  }
+
+  /**
+   * @param seed The initial state of the generator.
+   * @return A SplitMix64 random source; very fast, with a period of 2^64.
+   */
+  static RandomSource splitMix64(long seed) {
+    return new SplitMix64RandomSource(seed);
+  }
+
+  /**
+   * @param seed The seed to derive the initial state of the generator from.
+   * @return A xoroshiro128++ random source; very fast, with a period of 2^128 - 1.
+   */
+  static RandomSource xoroshiro128PlusPlus(long seed) {
+    return new Xoroshiro128PlusPlusRandomSource(seed);
+  }
+
+  /**
+   * @param seed The seed for the underlying {@link SplittableRandom}.
+   * @return A random source that draws its values from a {@link SplittableRandom}.
+   */
+  static RandomSource splittable(long seed) {
+    return new SplittableRandomSource(new SplittableRandom(seed));
+  }
+
+  /**
+   * @param random The {@link Random} object to draw values from.
+   * @return A random source that draws every value from the given {@link Random} object exactly
+   *     as calling it directly would.
+   */
+  static RandomSource of(Random random) {
+    return new JavaUtilRandomSource(random);
+  }
+}
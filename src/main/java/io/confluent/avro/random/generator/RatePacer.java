@@ -0,0 +1,130 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces records to a steady target rate, as a token bucket that fills at the target rate and holds
+ * up to a given burst of records. The time each record is due is computed from the number of
+ * records paced so far rather than accumulated sleep by sleep, so the rate doesn't drift; if
+ * writing falls behind schedule (during a GC pause, for instance), records are written without
+ * waiting until it has caught up, but never more than the burst size at once. Several sinks can be
+ * paced by the same pacer, sharing the rate between them.
+ */
+class RatePacer {
+
+  // Parking is only accurate to tens of microseconds, so the rest of the wait is spent spinning
+  private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final double rate;
+  private final double nanosPerRecord;
+  private final long burstNanos;
+
+  private long epoch;
+  private long scheduled;
+  private long startNanos;
+  private long records;
+
+  /**
+   * @param rate The target rate, in records per second.
+   * @param burst The largest number of records that may be written at once to catch up.
+   */
+  public RatePacer(double rate, long burst) {
+    this.rate = rate;
+    this.nanosPerRecord = TimeUnit.SECONDS.toNanos(1) / rate;
+    this.burstNanos = (long) (burst * nanosPerRecord);
+  }
+
+  /**
+   * @param sink The sink to pace writes to.
+   * @return A sink that writes and flushes every batch of records given to it when it is due.
+   */
+  public RecordSink pace(RecordSink sink) {
+    return new RecordSink() {
+      @Override
+      public void write(EncodedRecords records) throws IOException {
+        acquire(records.records());
+        sink.write(records);
+        sink.flush();
+      }
+
+      @Override
+      public void flush() throws IOException {
+        sink.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        sink.close();
+      }
+    };
+  }
+
+  /**
+   * Wait until the next given number of records are due.
+   * @param count The number of records about to be written.
+   */
+  public void acquire(int count) {
+    long due = reserve(count, System.nanoTime());
+    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+      if (wait > SPIN_NANOS) {
+        LockSupport.parkNanos(wait - SPIN_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Schedule the next given number of records.
+   * @param count The number of records to schedule.
+   * @param now The current value of {@link System#nanoTime()}.
+   * @return The value of {@link System#nanoTime()} at which the first of the records is due.
+   */
+  synchronized long reserve(int count, long now) {
+    if (records == 0) {
+      startNanos = now;
+      epoch = now;
+    }
+    long due = epoch + (long) (scheduled * nanosPerRecord);
+    if (now - due > burstNanos) {
+      // Too far behind to catch up on everything; drop what's beyond the burst from the schedule
+      epoch = now - burstNanos;
+      scheduled = 0;
+      due = epoch;
+    }
+    scheduled += count;
+    records += count;
+    return due;
+  }
+
+  /**
+   * @return The target rate, in records per second.
+   */
+  public double rate() {
+    return rate;
+  }
+
+  /**
+   * @return The rate achieved since the first record was paced, in records per second.
+   */
+  public synchronized double achievedRate() {
+    long nanos = System.nanoTime() - startNanos;
+    return records > 0 && nanos > 0 ? records * 1e9 / nanos : 0.0;
+  }
+}
@@ -0,0 +1,35 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+
+/**
+ * Generates records and serializes them into an {@link EncodedRecords} buffer. Implementations
+ * keep per-instance encoding state, so every thread that generates records uses its own.
+ */
+interface RecordEncoder {
+
+  /**
+   * Generate records and append them to the given buffer, one at a time.
+   * @param generator The generator to produce records with.
+   * @param count The number of records to generate.
+   * @param records The buffer to write the encoded records to.
+   * @throws IOException if an error occurs while encoding the records.
+   */
+  void encode(Generator generator, int count, EncodedRecords records) throws IOException;
+}
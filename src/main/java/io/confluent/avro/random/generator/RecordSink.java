@@ -0,0 +1,43 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * The destination that batches of encoded records are written to, in the order they are given.
+ * Closing the sink finishes and closes the underlying output.
+ */
+interface RecordSink extends Closeable, Flushable {
+
+  /**
+   * Write every record in the given buffer. The buffer may be reused once this returns.
+   * @param records The encoded records to write.
+   * @throws IOException if an error occurs while writing the records.
+   */
+  void write(EncodedRecords records) throws IOException;
+
+  /**
+   * Write out everything that is buffered, so that every record written so far reaches the
+   * underlying output.
+   * @throws IOException if an error occurs while writing the records.
+   */
+  @Override
+  void flush() throws IOException;
+}
@@ -0,0 +1,812 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+
+package io.confluent.avro.random.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A regular expression, compiled into a deterministic automaton that strings matching it can be
+ * generated from. Supports the commonly used subset of Java's regex syntax: literals and escapes,
+ * character classes (including the predefined ones), ".", groups, alternation, and the greedy,
+ * lazy and possessive forms of every quantifier. Anchors and boundaries match anywhere, and
+ * back-references, lookaround and class intersections aren't supported. "." and negated classes
+ * only produce printable ASCII characters. Instances are immutable, and so may be shared between
+ * threads.
+ */
+final class RegexAutomaton {
+
+  private static final int MIN_PRINTABLE = 0x20;
+  private static final int MAX_PRINTABLE = 0x7E;
+  private static final int MAX_STATES = 10_000;
+  // How many lengths to consider, both within the requested bounds and (if the regex can't produce
+  // any of those) past them
+  private static final int MAX_LENGTH_SEARCH = 1 << 16;
+
+  private static final int[] DIGITS = {'0', '9'};
+  private static final int[] WORD_CHARS = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+  private static final int[] WHITESPACE = {'\t', '\r', ' ', ' '};
+  private static final int[] PRINTABLE = {MIN_PRINTABLE, MAX_PRINTABLE};
+
+  private final String regex;
+  private final int stateCount;
+  private final int startState;
+  private final boolean[] accepting;
+  // The transitions of state s are [transitionOffsets[s], transitionOffsets[s + 1]); each one goes
+  // to transitionTargets[t] on any of the characters in its ranges, which are
+  // [rangeOffsets[t], rangeOffsets[t + 1]) (inclusive bounds in rangeLows and rangeHighs), and
+  // which add up to transitionWidths[t] characters.
+  private final int[] transitionOffsets;
+  private final int[] transitionTargets;
+  private final int[] transitionWidths;
+  private final int[] rangeOffsets;
+  private final char[] rangeLows;
+  private final char[] rangeHighs;
+  private final boolean ascii;
+
+  private RegexAutomaton(String regex, Dfa dfa) {
+    this.regex = regex;
+    this.stateCount = dfa.accepting.size();
+    this.startState = 0;
+    this.accepting = new boolean[stateCount];
+    for (int s = 0; s < stateCount; s++) {
+      accepting[s] = dfa.accepting.get(s);
+    }
+
+    int transitionCount = 0;
+    int rangeCount = 0;
+    for (Map<Integer, List<int[]>> transitions : dfa.transitions) {
+      transitionCount += transitions.size();
+      for (List<int[]> ranges : transitions.values()) {
+        rangeCount += ranges.size();
+      }
+    }
+    transitionOffsets = new int[stateCount + 1];
+    transitionTargets = new int[transitionCount];
+    transitionWidths = new int[transitionCount];
+    rangeOffsets = new int[transitionCount + 1];
+    rangeLows = new char[rangeCount];
+    rangeHighs = new char[rangeCount];
+    int t = 0;
+    int r = 0;
+    boolean ascii = true;
+    for (int s = 0; s < stateCount; s++) {
+      transitionOffsets[s] = t;
+      for (Map.Entry<Integer, List<int[]>> transition : dfa.transitions.get(s).entrySet()) {
+        transitionTargets[t] = transition.getKey();
+        rangeOffsets[t] = r;
+        for (int[] range : transition.getValue()) {
+          rangeLows[r] = (char) range[0];
+          rangeHighs[r] = (char) range[1];
+          transitionWidths[t] += range[1] - range[0] + 1;
+          ascii &= range[1] < 0x80;
+          r++;
+        }
+        t++;
+      }
+    }
+    transitionOffsets[stateCount] = t;
+    rangeOffsets[t] = r;
+    this.ascii = ascii;
+  }
+
+  /**
+   * @param regex The regular expression to compile.
+   * @return The compiled regular expression.
+   */
+  public static RegexAutomaton compile(String regex) {
+    Nfa nfa = new Nfa();
+    int[] fragment = nfa.build(new Parser(regex).parse());
+    return new RegexAutomaton(regex, new Dfa(regex, nfa, fragment[0], fragment[1]));
+  }
+
+  /**
+   * @return Whether every string matching the regex is made up of ASCII characters only.
+   */
+  public boolean isAscii() {
+    return ascii;
+  }
+
+  /**
+   * Prepares to generate strings with lengths in the given bounds. If the regex doesn't match any
+   * strings within them, the length closest to them that it does match is used instead.
+   * @param minLength The minimum length (inclusive) of generated strings.
+   * @param maxLength The maximum length (exclusive) of generated strings.
+   * @return A sampler for strings within those bounds.
+   */
+  public Sampler sampler(int minLength, int maxLength) {
+    return new Sampler(minLength, maxLength);
+  }
+
+  /**
+   * Generates strings matching the regex with lengths from a fixed set.
+   */
+  public final class Sampler {
+    private final int[] lengths;
+    // completable[r] holds the states from which exactly r more characters can be accepted
+    private final BitSet[] completable;
+
+    private Sampler(int minLength, int maxLength) {
+      List<BitSet> rows = new ArrayList<>();
+      BitSet row = new BitSet(stateCount);
+      for (int s = 0; s < stateCount; s++) {
+        row.set(s, accepting[s]);
+      }
+      rows.add(row);
+
+      int last = (int) Math.min(maxLength - 1L, (long) minLength + MAX_LENGTH_SEARCH - 1);
+      int[] found = new int[last - minLength + 1];
+      int foundCount = 0;
+      int longestBelow = -1;
+      for (int length = 0; length <= last && !row.isEmpty(); length++) {
+        if (length > 0) {
+          row = nextRow(row);
+          rows.add(row);
+        }
+        if (row.get(startState)) {
+          if (length < minLength) {
+            longestBelow = length;
+          } else {
+            found[foundCount++] = length;
+          }
+        }
+      }
+      if (foundCount == 0) {
+        if (longestBelow >= 0) {
+          found[foundCount++] = longestBelow;
+        } else {
+          for (int length = last + 1; length <= last + MAX_LENGTH_SEARCH && !row.isEmpty();
+              length++) {
+            row = nextRow(row);
+            rows.add(row);
+            if (row.get(startState)) {
+              found[foundCount++] = length;
+              break;
+            }
+          }
+        }
+      }
+      if (foundCount == 0) {
+        throw new RuntimeException(String.format(
+            "Regex '%s' does not match any strings that can be generated",
+            regex
+        ));
+      }
+
+      lengths = Arrays.copyOf(found, foundCount);
+      completable = rows.subList(0, maxLength() + 1).toArray(new BitSet[0]);
+    }
+
+    private BitSet nextRow(BitSet row) {
+      BitSet result = new BitSet(stateCount);
+      for (int s = 0; s < stateCount; s++) {
+        for (int t = transitionOffsets[s]; t < transitionOffsets[s + 1]; t++) {
+          if (row.get(transitionTargets[t])) {
+            result.set(s);
+            break;
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return The length of the longest string this can generate.
+     */
+    public int maxLength() {
+      return lengths[lengths.length - 1];
+    }
+
+    /**
+     * Generates a string matching the regex, choosing its length uniformly at random and then each
+     * of its characters uniformly at random from those that can still lead to a match.
+     * @param random The source of randomness for the string.
+     * @param buffer Where to write the string; must be at least {@link #maxLength()} long.
+     * @return The length of the string.
+     */
+    public int next(RandomSource random, char[] buffer) {
+      int length = lengths.length == 1 ? lengths[0] : lengths[random.nextInt(lengths.length)];
+      int state = startState;
+      for (int i = 0; i < length; i++) {
+        BitSet next = completable[length - i - 1];
+        int first = transitionOffsets[state];
+        int end = transitionOffsets[state + 1];
+        int width = 0;
+        for (int t = first; t < end; t++) {
+          if (next.get(transitionTargets[t])) {
+            width += transitionWidths[t];
+          }
+        }
+        int choice = random.nextInt(width);
+        int t = first;
+        while (!next.get(transitionTargets[t]) || choice >= transitionWidths[t]) {
+          if (next.get(transitionTargets[t])) {
+            choice -= transitionWidths[t];
+          }
+          t++;
+        }
+        int r = rangeOffsets[t];
+        while (choice > rangeHighs[r] - rangeLows[r]) {
+          choice -= rangeHighs[r] - rangeLows[r] + 1;
+          r++;
+        }
+        buffer[i] = (char) (rangeLows[r] + choice);
+        state = transitionTargets[t];
+      }
+      return length;
+    }
+  }
+
+  // Character sets are sorted, non-overlapping and non-adjacent inclusive ranges, flattened into
+  // arrays of [low, high, low, high, ...]
+
+  private static int[] union(int[] first, int[] second) {
+    int[] all = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, all, first.length, second.length);
+    return normalize(all);
+  }
+
+  private static int[] normalize(int[] ranges) {
+    int count = ranges.length / 2;
+    int[][] pairs = new int[count][];
+    for (int i = 0; i < count; i++) {
+      pairs[i] = new int[] {ranges[2 * i], ranges[2 * i + 1]};
+    }
+    Arrays.sort(pairs, (a, b) -> Integer.compare(a[0], b[0]));
+    int[] result = new int[ranges.length];
+    int size = 0;
+    for (int[] pair : pairs) {
+      if (size > 0 && pair[0] <= result[size - 1] + 1) {
+        result[size - 1] = Math.max(result[size - 1], pair[1]);
+      } else {
+        result[size++] = pair[0];
+        result[size++] = pair[1];
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  // The printable characters that aren't in the given set
+  private static int[] complement(int[] ranges) {
+    int[] result = new int[ranges.length + 2];
+    int size = 0;
+    int next = MIN_PRINTABLE;
+    for (int i = 0; i < ranges.length; i += 2) {
+      if (ranges[i] > next && next <= MAX_PRINTABLE) {
+        result[size++] = next;
+        result[size++] = Math.min(ranges[i] - 1, MAX_PRINTABLE);
+      }
+      next = Math.max(next, ranges[i + 1] + 1);
+    }
+    if (next <= MAX_PRINTABLE) {
+      result[size++] = next;
+      result[size++] = MAX_PRINTABLE;
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private abstract static class Node {
+  }
+
+  private static class CharSetNode extends Node {
+    private final int[] ranges;
+
+    public CharSetNode(int[] ranges) {
+      this.ranges = ranges;
+    }
+  }
+
+  private static class ConcatNode extends Node {
+    private final List<Node> children;
+
+    public ConcatNode(List<Node> children) {
+      this.children = children;
+    }
+  }
+
+  private static class AlternationNode extends Node {
+    private final List<Node> children;
+
+    public AlternationNode(List<Node> children) {
+      this.children = children;
+    }
+  }
+
+  private static class RepeatNode extends Node {
+    private final Node child;
+    private final int min;
+    // -1 if unbounded
+    private final int max;
+
+    public RepeatNode(Node child, int min, int max) {
+      this.child = child;
+      this.min = min;
+      this.max = max;
+    }
+  }
+
+  private static class Parser {
+    private final String regex;
+    private int position;
+
+    public Parser(String regex) {
+      this.regex = regex;
+    }
+
+    public Node parse() {
+      Node result = parseAlternation();
+      if (position < regex.length()) {
+        throw error("unmatched ')'");
+      }
+      return result;
+    }
+
+    private RuntimeException error(String problem) {
+      return new RuntimeException(String.format(
+          "Unable to parse regex '%s' at index %d: %s",
+          regex,
+          position,
+          problem
+      ));
+    }
+
+    private boolean atEnd() {
+      return position >= regex.length();
+    }
+
+    private char peek() {
+      return regex.charAt(position);
+    }
+
+    private boolean accept(char c) {
+      if (!atEnd() && peek() == c) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private Node parseAlternation() {
+      List<Node> alternatives = new ArrayList<>();
+      alternatives.add(parseConcatenation());
+      while (accept('|')) {
+        alternatives.add(parseConcatenation());
+      }
+      return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+    }
+
+    private Node parseConcatenation() {
+      List<Node> sequence = new ArrayList<>();
+      while (!atEnd() && peek() != '|' && peek() != ')') {
+        Node atom = parseAtom();
+        if (atom != null) {
+          sequence.add(parseQuantifiers(atom));
+        }
+      }
+      return sequence.size() == 1 ? sequence.get(0) : new ConcatNode(sequence);
+    }
+
+    private Node parseQuantifiers(Node atom) {
+      while (!atEnd()) {
+        int min;
+        int max;
+        char c = peek();
+        if (c == '*') {
+          min = 0;
+          max = -1;
+        } else if (c == '+') {
+          min = 1;
+          max = -1;
+        } else if (c == '?') {
+          min = 0;
+          max = 1;
+        } else if (c == '{' && isBoundedRepeat()) {
+          position++;
+          min = parseNumber();
+          max = min;
+          if (accept(',')) {
+            max = Character.isDigit(peek()) ? parseNumber() : -1;
+          }
+          if (max != -1 && max < min) {
+            throw error("repetition maximum is less than its minimum");
+          }
+        } else {
+          return atom;
+        }
+        position++;
+        // Lazy and possessive quantifiers match the same strings as greedy ones
+        if (!accept('?')) {
+          accept('+');
+        }
+        atom = new RepeatNode(atom, min, max);
+      }
+      return atom;
+    }
+
+    private boolean isBoundedRepeat() {
+      int end = regex.indexOf('}', position);
+      return end > position + 1 && regex.substring(position + 1, end).matches("\\d+(,\\d*)?");
+    }
+
+    private int parseNumber() {
+      int start = position;
+      while (Character.isDigit(peek())) {
+        position++;
+      }
+      try {
+        return Integer.parseInt(regex.substring(start, position));
+      } catch (NumberFormatException nfe) {
+        throw error("repetition count is too large");
+      }
+    }
+
+    // Returns null for atoms that don't match any characters (anchors and boundaries)
+    private Node parseAtom() {
+      char c = regex.charAt(position++);
+      switch (c) {
+        case '(':
+          if (accept('?')) {
+            if (accept('<') && !atEnd() && Character.isLetter(peek())) {
+              // A named group
+              int end = regex.indexOf('>', position);
+              if (end < 0) {
+                throw error("unterminated group name");
+              }
+              position = end + 1;
+            } else if (!accept(':')) {
+              throw error("lookaround and inline flags are not supported");
+            }
+          }
+          Node group = parseAlternation();
+          if (!accept(')')) {
+            throw error("unmatched '('");
+          }
+          return group;
+        case '[':
+          return new CharSetNode(parseClass());
+        case '.':
+          return new CharSetNode(PRINTABLE);
+        case '^':
+        case '$':
+          return null;
+        case '\\':
+          return parseEscape();
+        case '*':
+        case '+':
+        case '?':
+          throw error("dangling quantifier");
+        default:
+          return new CharSetNode(new int[] {c, c});
+      }
+    }
+
+    private Node parseEscape() {
+      if (atEnd()) {
+        throw error("trailing backslash");
+      }
+      char c = peek();
+      switch (c) {
+        case 'b':
+        case 'B':
+        case 'A':
+        case 'z':
+        case 'Z':
+        case 'G':
+          position++;
+          return null;
+        default:
+          if (c >= '1' && c <= '9') {
+            throw error("back-references are not supported");
+          }
+          return new CharSetNode(parseEscapedSet());
+      }
+    }
+
+    // Parses the escape sequence following a backslash into the characters it stands for
+    private int[] parseEscapedSet() {
+      char c = regex.charAt(position++);
+      switch (c) {
+        case 'd':
+          return DIGITS;
+        case 'D':
+          return complement(DIGITS);
+        case 'w':
+          return WORD_CHARS;
+        case 'W':
+          return complement(WORD_CHARS);
+        case 's':
+          return WHITESPACE;
+        case 'S':
+          return complement(WHITESPACE);
+        default:
+          int escaped = parseEscapedChar(c);
+          return new int[] {escaped, escaped};
+      }
+    }
+
+    private int parseEscapedChar(char c) {
+      switch (c) {
+        case 't':
+          return '\t';
+        case 'n':
+          return '\n';
+        case 'r':
+          return '\r';
+        case 'f':
+          return '\f';
+        case 'a':
+          return '\u0007';
+        case 'e':
+          return '\u001B';
+        case '0':
+          return parseHex(0, 8, 3);
+        case 'x':
+          return parseHex(0, 16, 2);
+        case 'u':
+          return parseHex(0, 16, 4);
+        default:
+          if (Character.isLetterOrDigit(c)) {
+            throw error(String.format("unsupported escape sequence '\\%c'", c));
+          }
+          return c;
+      }
+    }
+
+    private int parseHex(int value, int radix, int digits) {
+      for (int i = 0; i < digits && !atEnd() && Character.digit(peek(), radix) >= 0; i++) {
+        value = value * radix + Character.digit(regex.charAt(position++), radix);
+      }
+      return value;
+    }
+
+    private int[] parseClass() {
+      boolean negated = accept('^');
+      int[] ranges = new int[0];
+      boolean first = true;
+      while (true) {
+        if (atEnd()) {
+          throw error("unterminated character class");
+        }
+        char c = regex.charAt(position++);
+        if (c == ']' && !first) {
+          break;
+        }
+        first = false;
+        int[] item;
+        int low;
+        if (c == '[') {
+          throw error("nested character classes are not supported");
+        } else if (c == '\\') {
+          if (atEnd()) {
+            throw error("trailing backslash");
+          }
+          item = parseEscapedSet();
+        } else {
+          item = new int[] {c, c};
+        }
+        low = item[0];
+        boolean single = item.length == 2 && item[0] == item[1];
+        if (single && position + 1 < regex.length() && peek() == '-'
+            && regex.charAt(position + 1) != ']') {
+          position++;
+          char highChar = regex.charAt(position++);
+          int high;
+          if (highChar == '\\') {
+            int[] highSet = parseEscapedSet();
+            if (highSet.length != 2 || highSet[0] != highSet[1]) {
+              throw error("invalid range in character class");
+            }
+            high = highSet[0];
+          } else {
+            high = highChar;
+          }
+          if (high < low) {
+            throw error("invalid range in character class");
+          }
+          item = new int[] {low, high};
+        }
+        ranges = union(ranges, item);
+      }
+      return negated ? complement(ranges) : ranges;
+    }
+  }
+
+  // A Thompson-style NFA, in which every state either has epsilon transitions or a single
+  // transition on a set of characters
+  private static class Nfa {
+    private final List<List<Integer>> epsilons = new ArrayList<>();
+    private final List<int[]> charSets = new ArrayList<>();
+    private final List<Integer> charTargets = new ArrayList<>();
+
+    private int newState() {
+      epsilons.add(new ArrayList<>());
+      charSets.add(null);
+      charTargets.add(-1);
+      return epsilons.size() - 1;
+    }
+
+    private void epsilon(int from, int to) {
+      epsilons.get(from).add(to);
+    }
+
+    // Returns the start and end states of the fragment for the node
+    public int[] build(Node node) {
+      if (node instanceof CharSetNode) {
+        int start = newState();
+        int end = newState();
+        charSets.set(start, ((CharSetNode) node).ranges);
+        charTargets.set(start, end);
+        return new int[] {start, end};
+      } else if (node instanceof ConcatNode) {
+        int start = newState();
+        int end = start;
+        for (Node child : ((ConcatNode) node).children) {
+          int[] fragment = build(child);
+          epsilon(end, fragment[0]);
+          end = fragment[1];
+        }
+        return new int[] {start, end};
+      } else if (node instanceof AlternationNode) {
+        int start = newState();
+        int end = newState();
+        for (Node child : ((AlternationNode) node).children) {
+          int[] fragment = build(child);
+          epsilon(start, fragment[0]);
+          epsilon(fragment[1], end);
+        }
+        return new int[] {start, end};
+      } else {
+        RepeatNode repeat = (RepeatNode) node;
+        int start = newState();
+        int end = start;
+        for (int i = 0; i < repeat.min; i++) {
+          int[] fragment = build(repeat.child);
+          epsilon(end, fragment[0]);
+          end = fragment[1];
+        }
+        if (repeat.max == -1) {
+          int hub = newState();
+          int[] fragment = build(repeat.child);
+          epsilon(end, hub);
+          epsilon(hub, fragment[0]);
+          epsilon(fragment[1], hub);
+          return new int[] {start, hub};
+        }
+        int optionalEnd = newState();
+        epsilon(end, optionalEnd);
+        for (int i = repeat.min; i < repeat.max; i++) {
+          int[] fragment = build(repeat.child);
+          epsilon(end, fragment[0]);
+          end = fragment[1];
+          epsilon(end, optionalEnd);
+        }
+        return new int[] {start, optionalEnd};
+      }
+    }
+
+    private BitSet closure(BitSet states) {
+      BitSet result = (BitSet) states.clone();
+      int[] stack = new int[epsilons.size()];
+      int size = 0;
+      for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+        stack[size++] = s;
+      }
+      while (size > 0) {
+        for (int next : epsilons.get(stack[--size])) {
+          if (!result.get(next)) {
+            result.set(next);
+            stack[size++] = next;
+          }
+        }
+      }
+      return result;
+    }
+  }
+
+  // The subset construction of an NFA; state 0 is the start state
+  private static class Dfa {
+    private final List<Boolean> accepting = new ArrayList<>();
+    // For each state, the character ranges leading to each target state
+    private final List<Map<Integer, List<int[]>>> transitions = new ArrayList<>();
+
+    public Dfa(String regex, Nfa nfa, int nfaStart, int nfaAccept) {
+      Map<BitSet, Integer> stateIds = new HashMap<>();
+      List<BitSet> states = new ArrayList<>();
+      BitSet start = new BitSet();
+      start.set(nfaStart);
+      start = nfa.closure(start);
+      stateIds.put(start, 0);
+      states.add(start);
+
+      for (int id = 0; id < states.size(); id++) {
+        BitSet state = states.get(id);
+        accepting.add(state.get(nfaAccept));
+
+        // Split the characters into intervals over which every NFA transition is either taken or
+        // not, then find out where each of those intervals leads
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        for (int s = state.nextSetBit(0); s >= 0; s = state.nextSetBit(s + 1)) {
+          int[] ranges = nfa.charSets.get(s);
+          if (ranges == null) {
+            continue;
+          }
+          for (int i = 0; i < ranges.length; i += 2) {
+            boundaries.add(ranges[i]);
+            boundaries.add(ranges[i + 1] + 1);
+          }
+        }
+        Map<Integer, List<int[]>> stateTransitions = new TreeMap<>();
+        Integer low = boundaries.isEmpty() ? null : boundaries.first();
+        while (low != null) {
+          Integer next = boundaries.higher(low);
+          if (next == null) {
+            break;
+          }
+          int high = next - 1;
+          BitSet targets = new BitSet();
+          for (int s = state.nextSetBit(0); s >= 0; s = state.nextSetBit(s + 1)) {
+            int[] ranges = nfa.charSets.get(s);
+            if (ranges != null && contains(ranges, low)) {
+              targets.set(nfa.charTargets.get(s));
+            }
+          }
+          if (!targets.isEmpty()) {
+            targets = nfa.closure(targets);
+            Integer target = stateIds.get(targets);
+            if (target == null) {
+              target = states.size();
+              if (target >= MAX_STATES) {
+                throw new RuntimeException(String.format(
+                    "Regex '%s' is too complex; its automaton has more than %d states",
+                    regex,
+                    MAX_STATES
+                ));
+              }
+              stateIds.put(targets, target);
+              states.add(targets);
+            }
+            List<int[]> ranges = stateTransitions.computeIfAbsent(target, t -> new ArrayList<>());
+            int[] previous = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (previous != null && previous[1] + 1 == low) {
+              previous[1] = high;
+            } else {
+              ranges.add(new int[] {low, high});
+            }
+          }
+          low = next;
+        }
+        transitions.add(stateTransitions);
+      }
+    }
+
+    private static boolean contains(int[] ranges, int c) {
+      for (int i = 0; i < ranges.length; i += 2) {
+        if (ranges[i] <= c && c <= ranges[i + 1]) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
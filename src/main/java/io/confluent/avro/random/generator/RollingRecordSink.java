@@ -0,0 +1,139 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.io.IOException;
+
+/**
+ * Writes records to a series of numbered files, starting a new one whenever the next batch of
+ * records would take the current one past a given number of records or bytes. If the records of a
+ * batch can be written separately, a batch that would go past the record limit is split, so that
+ * every file but the last holds exactly that many records; otherwise, batches are never split
+ * across files. A file only ever exceeds the byte limit (or, without splitting, the record limit)
+ * when a single batch does. Files are opened as records arrive for them; none are created if no
+ * records are written.
+ */
+class RollingRecordSink implements RecordSink {
+
+  /**
+   * Opens the sink for a numbered file.
+   */
+  interface Files {
+    /**
+     * @param file The number of the file to open.
+     * @return A sink writing to the file.
+     * @throws IOException if an error occurs while opening the file.
+     */
+    RecordSink open(int file) throws IOException;
+  }
+
+  private final Files files;
+  private final int fileStep;
+  private final long maxRecords;
+  private final long maxBytes;
+  private final boolean splitBatches;
+
+  private int nextFile;
+  private RecordSink current;
+  private long currentRecords;
+  private long currentBytes;
+  private EncodedRecords part;
+
+  /**
+   * @param files Opens each file.
+   * @param firstFile The number of the first file.
+   * @param fileStep The difference between the numbers of consecutive files, so that several
+   *     sinks can share a numbering without overlapping.
+   * @param maxRecords The largest number of records to write to a file, or a non-positive value
+   *     for no limit.
+   * @param maxBytes The largest number of encoded bytes to write to a file, not counting the
+   *     container file's own overhead, or a non-positive value for no limit.
+   * @param splitBatches Whether the records of a batch can be written separately, so that a batch
+   *     can be split between files at the record limit.
+   */
+  public RollingRecordSink(
+      Files files,
+      int firstFile,
+      int fileStep,
+      long maxRecords,
+      long maxBytes,
+      boolean splitBatches) {
+    this.files = files;
+    this.fileStep = fileStep;
+    this.maxRecords = maxRecords > 0 ? maxRecords : Long.MAX_VALUE;
+    this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    this.splitBatches = splitBatches;
+    this.nextFile = firstFile;
+  }
+
+  @Override
+  public void write(EncodedRecords records) throws IOException {
+    if (!splitBatches || records.records() <= maxRecords - currentRecords) {
+      writeBatch(records);
+      return;
+    }
+    // Fill the current file up to the limit, and the files after it with the rest of the batch
+    if (part == null) {
+      part = new EncodedRecords();
+    }
+    for (int start = 0; start < records.records(); ) {
+      if (currentRecords == maxRecords) {
+        closeCurrent();
+      }
+      int end = (int) Math.min(records.records(), start + (maxRecords - currentRecords));
+      records.copyTo(start, end, part);
+      writeBatch(part);
+      start = end;
+    }
+  }
+
+  private void writeBatch(EncodedRecords records) throws IOException {
+    if (current != null
+        && (records.records() > maxRecords - currentRecords
+            || records.size() > maxBytes - currentBytes)) {
+      closeCurrent();
+    }
+    if (current == null) {
+      current = files.open(nextFile);
+      nextFile += fileStep;
+    }
+    current.write(records);
+    currentRecords += records.records();
+    currentBytes += records.size();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (current != null) {
+      current.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeCurrent();
+  }
+
+  private void closeCurrent() throws IOException {
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+    currentRecords = 0;
+    currentBytes = 0;
+  }
+}
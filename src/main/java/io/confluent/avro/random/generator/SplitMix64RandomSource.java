@@ -0,0 +1,53 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+/**
+ * The SplitMix64 generator (http://xoshiro.di.unimi.it/splitmix64.c), the same algorithm that
+ * {@link java.util.SplittableRandom} is built on, without any of its synchronization-free
+ * splitting machinery.
+ */
+final class SplitMix64RandomSource implements RandomSource {
+
+  static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private long state;
+
+  public SplitMix64RandomSource(long seed) {
+    this.state = seed;
+  }
+
+  @Override
+  public long nextLong() {
+    return mix(state += GOLDEN_GAMMA);
+  }
+
+  @Override
+  public void nextLongs(long[] longs, int offset, int length) {
+    long state = this.state;
+    for (int i = offset; i < offset + length; i++) {
+      longs[i] = mix(state += GOLDEN_GAMMA);
+    }
+    this.state = state;
+  }
+
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
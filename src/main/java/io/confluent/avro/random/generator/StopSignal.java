@@ -0,0 +1,79 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells generation to stop before every record asked for has been produced: once a deadline has
+ * passed, or once the JVM starts shutting down (on SIGTERM or SIGINT, for instance). In the latter
+ * case, shutdown is held off until generation reports that it has finished, so that the output can
+ * be flushed and closed properly first.
+ */
+class StopSignal {
+
+  // How long shutdown is held off for at most, in case generation doesn't notice it should stop
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  private final long deadline;
+  private final boolean timed;
+  private final CountDownLatch finished;
+  private volatile boolean stopped;
+
+  /**
+   * @param durationNanos How long to generate for, in nanoseconds, or a negative value to keep
+   *     generating until every record asked for has been produced.
+   */
+  public StopSignal(long durationNanos) {
+    this.timed = durationNanos >= 0;
+    this.deadline = System.nanoTime() + Math.max(durationNanos, 0);
+    this.finished = new CountDownLatch(1);
+  }
+
+  /**
+   * Stop generation when the JVM starts shutting down, and hold off shutdown until
+   * {@link #finished()} is called.
+   */
+  public void stopOnShutdown() {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      stopped = true;
+      try {
+        finished.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        // Shut down right away, then
+      }
+    }, Main.PROGRAM_NAME + "-shutdown"));
+  }
+
+  /**
+   * @return Whether generation should stop.
+   */
+  public boolean isStopped() {
+    if (!stopped && timed && System.nanoTime() - deadline >= 0) {
+      stopped = true;
+    }
+    return stopped;
+  }
+
+  /**
+   * Report that generation has finished and its output has been closed.
+   */
+  public void finished() {
+    finished.countDown();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+   Copyright 2018 Confluent Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License"); you may not
+   use this file except in compliance with the License. You may obtain a copy of
+   the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+   WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+   License for the specific language governing permissions and limitations under
+   the License.
+ */
+
+package io.confluent.avro.random.generator;
+
+/**
+ * The xoroshiro128++ generator (http://xoshiro.di.unimi.it/xoroshiro128plusplus.c). Its two words
+ * of state are initialized from the seed with SplitMix64, as recommended by its authors.
+ */
+final class Xoroshiro128PlusPlusRandomSource implements RandomSource {
+
+  private long s0;
+  private long s1;
+
+  public Xoroshiro128PlusPlusRandomSource(long seed) {
+    setSeed(seed);
+  }
+
+  /**
+   * Reset the state of the generator to the one a new instance with the given seed would have.
+   * @param seed The seed to derive the new state of the generator from.
+   */
+  void setSeed(long seed) {
+    SplitMix64RandomSource seeds = new SplitMix64RandomSource(seed);
+    this.s0 = seeds.nextLong();
+    this.s1 = seeds.nextLong();
+    if ((s0 | s1) == 0) {
+      // The all-zero state is the only one the generator can never leave
+      this.s1 = 1;
+    }
+  }
+
+  @Override
+  public long nextLong() {
+    final long s0 = this.s0;
+    long s1 = this.s1;
+    final long result = Long.rotateLeft(s0 + s1, 17) + s0;
+    s1 ^= s0;
+    this.s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+    this.s1 = Long.rotateLeft(s1, 28);
+    return result;
+  }
+
+  @Override
+  public void nextLongs(long[] longs, int offset, int length) {
+    long s0 = this.s0;
+    long s1 = this.s1;
+    for (int i = offset; i < offset + length; i++) {
+      longs[i] = Long.rotateLeft(s0 + s1, 17) + s0;
+      s1 ^= s0;
+      s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+      s1 = Long.rotateLeft(s1, 28);
+    }
+    this.s0 = s0;
+    this.s1 = s1;
+  }
+}
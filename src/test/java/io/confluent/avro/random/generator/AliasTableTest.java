@@ -0,0 +1,38 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+
+public class AliasTableTest {
+
+  @Test
+  public void shouldSampleProportionallyToWeights() {
+    double[] weights = {1.0, 0.0, 3.0, 6.0};
+    AliasTable table = new AliasTable(weights);
+    RandomSource random = RandomSource.xoroshiro128PlusPlus(42L);
+
+    int draws = 1_000_000;
+    int[] counts = new int[weights.length];
+    for (int i = 0; i < draws; i++) {
+      counts[table.next(random)]++;
+    }
+
+    assertThat(counts[1], is(0));
+    assertEquals(0.1, counts[0] / (double) draws, 0.005);
+    assertEquals(0.3, counts[2] / (double) draws, 0.005);
+    assertEquals(0.6, counts[3] / (double) draws, 0.005);
+  }
+
+  @Test
+  public void shouldHandleSingleOption() {
+    AliasTable table = new AliasTable(new double[] {2.5});
+    RandomSource random = RandomSource.xoroshiro128PlusPlus(42L);
+    for (int i = 0; i < 100; i++) {
+      assertThat(table.next(random), is(0));
+    }
+  }
+}
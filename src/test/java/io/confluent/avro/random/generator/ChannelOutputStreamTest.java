@@ -0,0 +1,57 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+
+public class ChannelOutputStreamTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteEverythingInOrder() throws IOException {
+    File file = folder.newFile();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Random random = new Random(42L);
+    try (OutputStream output =
+        new ChannelOutputStream(new FileOutputStream(file).getChannel(), 64, 0)) {
+      for (int i = 0; i < 1000; i++) {
+        // Single bytes, writes that fit in the buffer and writes that are larger than it
+        byte[] bytes = new byte[random.nextInt(3) == 0 ? 1 : random.nextInt(200)];
+        random.nextBytes(bytes);
+        if (bytes.length == 1) {
+          output.write(bytes[0]);
+        } else {
+          output.write(bytes, 0, bytes.length);
+        }
+        expected.write(bytes, 0, bytes.length);
+      }
+    }
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  public void shouldTruncatePreallocatedFile() throws IOException {
+    File file = folder.newFile();
+    try (OutputStream output =
+        new ChannelOutputStream(new FileOutputStream(file).getChannel(), 64, 1 << 20)) {
+      assertThat(file.length(), is(1L << 20));
+      output.write(new byte[100], 0, 100);
+    }
+    assertThat(file.length(), is(100L));
+  }
+}
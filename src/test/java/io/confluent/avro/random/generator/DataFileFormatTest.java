@@ -0,0 +1,63 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+
+public class DataFileFormatTest {
+
+  private static final String SCHEMA = "{"
+      + "\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+      + "{\"name\": \"long\", \"type\": \"long\"},"
+      + "{\"name\": \"double\", \"type\": \"double\"},"
+      + "{\"name\": \"boolean\", \"type\": \"boolean\"}"
+      + "]}";
+
+  @Test
+  public void shouldAppendCompressedBlocksInOrder() throws IOException {
+    Generator generator = new Generator.Builder()
+        .schemaString(SCHEMA)
+        .random(new Random(42L))
+        .build();
+    Generator expected = new Generator.Builder()
+        .schemaString(SCHEMA)
+        .random(new Random(42L))
+        .build();
+    // Small enough for blocks to be started in the middle of a chunk as well
+    DataFileFormat format = new DataFileFormat("deflate", 256);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    RecordEncoder[] encoders = {format.encoders().get(), format.encoders().get()};
+    try (RecordSink sink = format.sink(generator.schema(), output)) {
+      EncodedRecords records = new EncodedRecords();
+      for (int chunk = 0; chunk < 10; chunk++) {
+        records.reset();
+        // Alternating between encoders, as chunks generated by different workers would
+        encoders[chunk % encoders.length].encode(generator, 100, records);
+        assertThat(records.records(), is(100));
+        sink.write(records);
+      }
+    }
+
+    try (DataFileStream<Object> stream = new DataFileStream<>(
+        new ByteArrayInputStream(output.toByteArray()),
+        new GenericDatumReader<>(generator.schema())
+    )) {
+      int count = 0;
+      while (stream.hasNext()) {
+        assertThat(stream.next(), is(expected.generate()));
+        count++;
+      }
+      assertThat(count, is(1000));
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.message.BinaryMessageDecoder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+public class FramedRecordEncoderTest {
+
+  private static final String VALUE_SCHEMA = "{"
+      + "\"type\": \"record\", \"name\": \"value\", \"fields\": ["
+      + "{\"name\": \"id\", \"type\": {\"type\": \"long\","
+      + " \"arg.properties\": {\"iteration\": {\"start\": 0}}}},"
+      + "{\"name\": \"score\", \"type\": \"double\"}"
+      + "]}";
+
+  private static final String KEY_SCHEMA =
+      "{\"type\": \"long\", \"arg.properties\": {\"iteration\": {\"start\": 0}}}";
+
+  @Test
+  public void shouldFrameValues() throws IOException {
+    Schema schema = new Schema.Parser().parse(VALUE_SCHEMA);
+    FramedFormat format = FramedFormat.wireFormat(42, null, 0);
+    Generator generator = new Generator.Builder().schema(format.generatedSchema(schema)).build();
+
+    EncodedRecords records = new EncodedRecords();
+    format.encoders(generator.schema()).get().encode(generator, 10, records);
+
+    assertThat(records.records(), is(10));
+    ByteBuffer messages = records.record(0);
+    messages.limit(records.size());
+    for (long i = 0; i < 10; i++) {
+      GenericRecord value = (GenericRecord) readMessage(messages, 42, schema);
+      assertThat(value.get("id"), is(i));
+    }
+    assertThat(messages.hasRemaining(), is(false));
+  }
+
+  @Test
+  public void shouldFrameKeysApartFromValues() throws IOException {
+    Schema schema = new Schema.Parser().parse(VALUE_SCHEMA);
+    Schema keySchema = new Schema.Parser().parse(KEY_SCHEMA);
+    FramedFormat format = FramedFormat.wireFormat(42, keySchema, 7);
+    Generator generator = new Generator.Builder().schema(format.generatedSchema(schema)).build();
+
+    EncodedRecords records = new EncodedRecords();
+    format.encoders(generator.schema()).get().encode(generator, 10, records);
+
+    assertThat(records.records(), is(10));
+    assertThat(records.keys().records(), is(10));
+    ByteBuffer keys = records.keys().record(0);
+    keys.limit(records.keys().size());
+    ByteBuffer values = records.record(0);
+    values.limit(records.size());
+    for (int i = 0; i < 10; i++) {
+      // Iterated fields line up between keys and values
+      Object key = readMessage(keys, 7, keySchema);
+      GenericRecord value = (GenericRecord) readMessage(values, 42, schema);
+      assertThat(value.get("id"), is(key));
+    }
+  }
+
+  @Test
+  public void shouldWriteSingleObjectEncoding() throws IOException {
+    Schema schema = new Schema.Parser().parse(VALUE_SCHEMA);
+    FramedFormat format = FramedFormat.singleObject(schema, null);
+    Generator generator = new Generator.Builder().schema(format.generatedSchema(schema)).build();
+
+    EncodedRecords records = new EncodedRecords();
+    format.encoders(generator.schema()).get().encode(generator, 10, records);
+
+    ByteBuffer messages = records.record(0);
+    messages.limit(records.size());
+    for (long i = 0; i < 10; i++) {
+      byte[] message = new byte[messages.getInt()];
+      messages.get(message);
+      // The single-object decoder reads the header itself
+      GenericRecord value = new BinaryMessageDecoder<GenericRecord>(GenericData.get(), schema)
+          .decode(message);
+      assertThat(value.get("id"), is(i));
+    }
+  }
+
+  private static Object readMessage(ByteBuffer messages, int schemaId, Schema schema)
+      throws IOException {
+    int length = messages.getInt();
+    assertThat(messages.get(), is(FramedFormat.MAGIC_BYTE));
+    assertThat(messages.getInt(), is(schemaId));
+    int bodyLength = length - 5;
+    Object result = new GenericDatumReader<>(schema).read(
+        null,
+        DecoderFactory.get().binaryDecoder(
+            messages.array(),
+            messages.arrayOffset() + messages.position(),
+            bodyLength,
+            null
+        )
+    );
+    messages.position(messages.position() + bodyLength);
+    return result;
+  }
+}
@@ -0,0 +1,48 @@
+package io.confluent.avro.random.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+
+public class GenerateBatchTest {
+
+  // Map sizes vary widely, so maps reused from a batch have often held many more entries before
+  private static final String MAP_SCHEMA = "{"
+      + "\"type\": \"map\", \"values\": \"long\","
+      + " \"arg.properties\": {\"length\": {\"min\": 0, \"max\": 64}}"
+      + "}";
+
+  @Test
+  public void shouldWriteSameMapsInBatchesAsOneAtATime() throws IOException {
+    Schema schema = new Schema.Parser().parse(MAP_SCHEMA);
+    Generator single = new Generator.Builder().schema(schema).random(new Random(42)).build();
+    Generator batched = new Generator.Builder().schema(schema).random(new Random(42)).build();
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(schema);
+
+    Object[] batch = new Object[8];
+    for (int round = 0; round < 50; round++) {
+      batched.generateBatch(batch);
+      for (Object value : batch) {
+        assertArrayEquals(encode(writer, single.generate()), encode(writer, value));
+      }
+    }
+  }
+
+  private static byte[] encode(GenericDatumWriter<Object> writer, Object value)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    writer.write(value, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+}
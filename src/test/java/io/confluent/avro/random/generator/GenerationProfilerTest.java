@@ -0,0 +1,67 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+
+public class GenerationProfilerTest {
+
+  private static final String SCHEMA = "{"
+      + "\"type\": \"record\", \"name\": \"order\", \"fields\": ["
+      + "  {\"name\": \"items\", \"type\": {\"type\": \"array\", \"items\": {"
+      + "    \"type\": \"record\", \"name\": \"item\", \"fields\": ["
+      + "      {\"name\": \"sku\", \"type\": \"string\"}"
+      + "    ]"
+      + "  }}},"
+      + "  {\"name\": \"quantities\", \"type\": {\"type\": \"map\", \"values\": \"int\"}},"
+      + "  {\"name\": \"note\", \"type\": [\"null\", \"string\"]}"
+      + "]}";
+
+  @Test
+  public void shouldAccountCostsToSchemaPaths() {
+    GenerationProfiler profiler = new GenerationProfiler(1);
+    Generator generator = new Generator.Builder()
+        .schemaString(SCHEMA)
+        .profiler(profiler)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      generator.generate();
+    }
+
+    Map<String, GenerationProfiler.Entry> entries = profiler.entries();
+    assertThat(new ArrayList<>(entries.keySet()), is(Arrays.asList(
+        "order",
+        "order.items",
+        "order.items[]",
+        "order.items[].sku",
+        "order.quantities",
+        "order.quantities{}",
+        "order.note"
+    )));
+    assertThat(entries.get("order").calls(), is(10L));
+    assertThat(entries.get("order").samples(), is(10L));
+    assertThat(entries.get("order.note").calls(), is(10L));
+  }
+
+  @Test
+  public void shouldOnlySampleEveryInterval() {
+    GenerationProfiler profiler = new GenerationProfiler(4);
+    Generator generator = new Generator.Builder()
+        .schemaString(SCHEMA)
+        .profiler(profiler)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      generator.generate();
+    }
+
+    GenerationProfiler.Entry entry = profiler.entries().get("order");
+    assertThat(entry.samples(), is(2L));
+    assertThat(entry.calls(), is(8L));
+  }
+}
@@ -2,12 +2,17 @@ package io.confluent.avro.random.generator;
 
 import static io.confluent.avro.random.generator.util.ResourceUtil.loadContent;
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
 
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -16,6 +21,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @RunWith(Parameterized.class)
@@ -81,4 +89,160 @@ public class GeneratorTest {
     assertEquals(generatorA.generate(), generatorB.generate());
     assertEquals(generatorA.generate(), generatorB.generate());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldWriteSameValuesDirectlyToEncoder() throws IOException {
+    long seed = 100L;
+    Generator generatorA = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+    Generator generatorB = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Encoder expectedEncoder = EncoderFactory.get().binaryEncoder(expected, null);
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(generatorA.schema());
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    Encoder actualEncoder = EncoderFactory.get().binaryEncoder(actual, null);
+    for (int i = 0; i < 10; i++) {
+      writer.write(generatorA.generate(), expectedEncoder);
+      generatorB.generateTo(actualEncoder);
+    }
+    expectedEncoder.flush();
+    actualEncoder.flush();
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+
+  @Test
+  public void shouldGenerateSameValuesWhenReusingObjects() throws IOException {
+    long seed = 100L;
+    Generator generatorA = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+    Generator generatorB = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(generatorA.schema());
+    Object reused = null;
+    for (int i = 0; i < 10; i++) {
+      reused = generatorB.generate(reused);
+      assertArrayEquals(encode(writer, generatorA.generate()), encode(writer, reused));
+    }
+  }
+
+  @Test
+  public void shouldGenerateSameValuesWhenProfiling() throws IOException {
+    long seed = 100L;
+    Generator generatorA = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+    Generator generatorB = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .profiler(new GenerationProfiler(3))
+        .build();
+
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(generatorA.schema());
+    for (int i = 0; i < 10; i++) {
+      Object expected = generatorA.generate();
+      assertArrayEquals(encode(writer, expected), encode(writer, generatorB.generate()));
+    }
+  }
+
+  @Test
+  public void shouldGenerateSameValuesInBatches() throws IOException {
+    long seed = 100L;
+    Generator generatorA = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+    Generator generatorB = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(generatorA.schema());
+    Object[] batch = generatorB.generateBatch(5);
+    for (int i = 0; i < 2; i++) {
+      for (Object value : batch) {
+        assertArrayEquals(encode(writer, generatorA.generate()), encode(writer, value));
+      }
+      generatorB.generateBatch(batch);
+    }
+  }
+
+  @Test
+  public void shouldGenerateSameValuesFromSharedTemplate() throws Exception {
+    GeneratorTemplate template = new Generator.Builder()
+        .schemaString(content)
+        .buildTemplate();
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(template.schema());
+
+    int threads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<Object>>> results = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        long seed = thread;
+        results.add(executor.submit(() -> {
+          Generator generator = new Generator.Builder()
+              .template(template)
+              .random(new Random(seed))
+              .build();
+          return generator.stream().limit(100).collect(Collectors.toList());
+        }));
+      }
+      for (int thread = 0; thread < threads; thread++) {
+        Generator expected = new Generator.Builder()
+            .schemaString(content)
+            .random(new Random(thread))
+            .build();
+        List<Object> actual = results.get(thread).get();
+        for (Object value : expected.stream().limit(100).collect(Collectors.toList())) {
+          assertArrayEquals(encode(writer, value), encode(writer, actual.remove(0)));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldGenerateSameValuesInParallelStreams() throws IOException {
+    long seed = 100L;
+    Generator generatorA = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+    Generator generatorB = new Generator.Builder()
+        .schemaString(content)
+        .random(new Random(seed))
+        .build();
+
+    int count = 3 * GenerationSpliterator.BLOCK_SIZE + 10;
+    List<Object> sequential = generatorA.stream(count).collect(Collectors.toList());
+    List<Object> parallel = generatorB.stream(count).parallel().collect(Collectors.toList());
+    assertEquals(count, parallel.size());
+
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<>(generatorA.schema());
+    for (int i = 0; i < count; i++) {
+      assertArrayEquals(encode(writer, sequential.get(i)), encode(writer, parallel.get(i)));
+    }
+  }
+
+  private static byte[] encode(GenericDatumWriter<Object> writer, Object datum)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    writer.write(datum, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+}
@@ -80,4 +80,46 @@ public class IterationTest {
       assertThat("Different on iteration " + i, simulation.generate(), is(generator.generate()));
     }
   }
+
+  @Test
+  public void shouldSeekToGeneration() {
+    Generator seeking = new Generator.Builder().schemaString(ITERATION_SCHEMA).build();
+    for (long i = 0; i < 100; i++) {
+      Generator simulation = new Generator.Builder()
+          .schemaString(ITERATION_SCHEMA)
+          .generation(i * 37)
+          .build();
+      seeking.seek(i * 37);
+      assertThat(
+          "Different on generation " + i * 37,
+          seeking.generate(),
+          is(simulation.generate())
+      );
+    }
+  }
+
+  @Test
+  public void shouldIterateAcrossFullLongRange() {
+    Generator fullRange = new Generator.Builder().schemaString(
+        "{\"type\": \"long\", \"arg.properties\": {\"iteration\": "
+        + "{\"start\": -9223372036854775808, \"restart\": 9223372036854775807, \"step\": "
+        + "4611686018427387904}}}"
+    ).build();
+    assertThat(fullRange.generate(), is(Long.MIN_VALUE));
+    assertThat(fullRange.generate(), is(Long.MIN_VALUE / 2));
+    assertThat(fullRange.generate(), is(0L));
+    assertThat(fullRange.generate(), is(Long.MAX_VALUE / 2 + 1));
+    assertThat(fullRange.generate(), is(Long.MIN_VALUE + 1));
+  }
+
+  @Test
+  public void shouldIterateDecimalsWithoutAccumulatingRoundingErrors() {
+    Generator tenths = new Generator.Builder().schemaString(
+        "{\"type\": \"double\", \"arg.properties\": {\"iteration\": "
+        + "{\"start\": 0.0, \"restart\": 1.0, \"step\": 0.1}}}"
+    ).build();
+    for (int i = 0; i < 25; i++) {
+      assertThat(tenths.generate(), is((i % 10) / 10.0));
+    }
+  }
 }
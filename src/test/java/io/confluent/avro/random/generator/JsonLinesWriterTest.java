@@ -0,0 +1,93 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+
+public class JsonLinesWriterTest {
+
+  private static final String SCHEMA = "{"
+      + "\"type\": \"record\", \"name\": \"value\", \"namespace\": \"test\", \"fields\": ["
+      + "{\"name\": \"id\", \"type\": \"long\"},"
+      + "{\"name\": \"ratio\", \"type\": \"float\"},"
+      + "{\"name\": \"score\", \"type\": \"double\"},"
+      + "{\"name\": \"name\", \"type\": \"string\"},"
+      + "{\"name\": \"data\", \"type\": \"bytes\"},"
+      + "{\"name\": \"tags\", \"type\": {\"type\": \"array\", \"items\": \"string\"}},"
+      + "{\"name\": \"counts\", \"type\": {\"type\": \"map\", \"values\": \"int\"}},"
+      + "{\"name\": \"option\", \"type\": [\"null\", \"string\"]}"
+      + "]}";
+
+  @Test
+  public void shouldMatchAvroJsonEncoding() throws IOException {
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    GenericRecord record = new GenericData.Record(schema);
+    record.put("id", Long.MIN_VALUE);
+    record.put("ratio", 0.1f);
+    record.put("score", -12345.0);
+    record.put("name", "quote \" slash \\ tab \t control \u0001 unicode é€");
+    record.put("data", ByteBuffer.wrap(new byte[] {0, 'a', (byte) 0xff}));
+    record.put("tags", Arrays.asList("a", "b"));
+    record.put("counts", Collections.singletonMap("x", 1));
+    record.put("option", "set");
+
+    assertThat(writeJsonLines(schema, false, record), is(writeAvroJson(schema, record) + "\n"));
+
+    record.put("score", Double.NaN);
+    record.put("option", null);
+    assertThat(writeJsonLines(schema, false, record), is(writeAvroJson(schema, record) + "\n"));
+  }
+
+  @Test
+  public void shouldWritePlainUnions() throws IOException {
+    Schema schema = new Schema.Parser().parse(
+        "[\"null\", \"int\", {\"type\": \"record\", \"name\": \"test.pair\", \"fields\": ["
+        + "{\"name\": \"left\", \"type\": \"int\"}, {\"name\": \"right\", \"type\": \"int\"}]}]"
+    );
+    GenericRecord pair = new GenericData.Record(schema.getTypes().get(2));
+    pair.put("left", 1);
+    pair.put("right", 2);
+
+    assertThat(writeJsonLines(schema, false, 3), is("{\"int\":3}\n"));
+    assertThat(
+        writeJsonLines(schema, false, pair),
+        is("{\"test.pair\":{\"left\":1,\"right\":2}}\n")
+    );
+    assertThat(writeJsonLines(schema, true, 3), is("3\n"));
+    assertThat(writeJsonLines(schema, true, pair), is("{\"left\":1,\"right\":2}\n"));
+    assertThat(writeJsonLines(schema, true, null), is("null\n"));
+  }
+
+  private static String writeJsonLines(Schema schema, boolean plainUnions, Object value)
+      throws IOException {
+    JsonLinesWriter writer = new JsonLinesWriter(schema, plainUnions);
+    writer.write(value);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeTo(out);
+    assertThat(writer.size(), is(0));
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static String writeAvroJson(Schema schema, Object value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().jsonEncoder(schema, out);
+    new GenericDatumWriter<>(schema).write(value, encoder);
+    encoder.flush();
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
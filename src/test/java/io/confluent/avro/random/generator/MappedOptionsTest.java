@@ -0,0 +1,88 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.apache.avro.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+
+public class MappedOptionsTest {
+
+  private static final Schema STRING_SCHEMA = Schema.create(Schema.Type.STRING);
+
+  // A string of 200 characters, whose length takes two bytes to encode
+  private static final int OPTION_LENGTH = 200;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldRejectWeightedFileEndingInsideOption() throws IOException {
+    ByteBuffer contents = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+    putWeightedOption(contents, 'a', 3, 1.0);
+    // The first byte of a length, promising another one that never comes
+    contents.put((byte) 0x80);
+    File file = write(contents);
+
+    try {
+      MappedOptions.map(file, STRING_SCHEMA, true);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("ends in the middle of an option"));
+    }
+  }
+
+  @Test
+  public void shouldMapWeightedOptionsAcrossSegments() throws IOException {
+    ByteBuffer contents = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    putWeightedOption(contents, 'a', OPTION_LENGTH, 1.0);
+    putWeightedOption(contents, 'b', OPTION_LENGTH, 2.0);
+    putWeightedOption(contents, 'c', OPTION_LENGTH, 3.0);
+    File file = write(contents);
+
+    // Segments end between the two bytes of the second option's length
+    int optionSize = 2 + OPTION_LENGTH + Double.BYTES;
+    MappedOptions options = MappedOptions.map(file, STRING_SCHEMA, true, optionSize + 1);
+
+    assertThat(options.size(), is(3));
+    assertThat(Arrays.toString(options.weights()), is("[1.0, 2.0, 3.0]"));
+    byte[] buffer = new byte[options.maxLength()];
+    for (int i = 0; i < 3; i++) {
+      assertThat(options.read(i, buffer), is(2 + OPTION_LENGTH));
+      assertThat(buffer[2], is((byte) ('a' + i)));
+    }
+  }
+
+  // Writes a string of the given character repeated, in Avro's binary encoding, and its weight
+  private static void putWeightedOption(ByteBuffer buffer, char c, int length, double weight) {
+    for (long zigZag = length << 1; ; zigZag >>>= 7) {
+      if ((zigZag & ~0x7FL) == 0) {
+        buffer.put((byte) zigZag);
+        break;
+      }
+      buffer.put((byte) (zigZag & 0x7F | 0x80));
+    }
+    for (int i = 0; i < length; i++) {
+      buffer.put((byte) c);
+    }
+    buffer.putDouble(weight);
+  }
+
+  private File write(ByteBuffer contents) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), Arrays.copyOf(contents.array(), contents.position()));
+    return file;
+  }
+}
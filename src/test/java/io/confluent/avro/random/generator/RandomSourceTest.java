@@ -0,0 +1,98 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+
+import io.confluent.avro.random.generator.util.ResourceUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongFunction;
+
+
+public class RandomSourceTest {
+
+  private static final String REGEX_SCHEMA =
+      ResourceUtil.loadContent("test-schemas/regex.json");
+
+  @Test
+  public void shouldMatchSplitMix64ReferenceOutput() {
+    RandomSource source = RandomSource.splitMix64(0L);
+    assertThat(source.nextLong(), is(0xE220A8397B1DCDAFL));
+    assertThat(source.nextLong(), is(0x6E789E6AA1B965F4L));
+  }
+
+  @Test
+  public void shouldReproduceValuesForSameSeed() {
+    assertReproducible(RandomSource::splitMix64);
+    assertReproducible(RandomSource::xoroshiro128PlusPlus);
+    assertReproducible(RandomSource::splittable);
+    assertReproducible(seed -> RandomSource.of(new Random(seed)));
+  }
+
+  @Test
+  public void shouldStayWithinBounds() {
+    RandomSource source = RandomSource.xoroshiro128PlusPlus(42L);
+    for (int i = 0; i < 10_000; i++) {
+      int boundedInt = source.nextInt(7);
+      long boundedLong = source.nextLong(1_000_000_000_000_000L);
+      double unitDouble = source.nextDouble();
+      float unitFloat = source.nextFloat();
+      assertTrue(boundedInt >= 0 && boundedInt < 7);
+      assertTrue(boundedLong >= 0 && boundedLong < 1_000_000_000_000_000L);
+      assertTrue(unitDouble >= 0.0 && unitDouble < 1.0);
+      assertTrue(unitFloat >= 0.0f && unitFloat < 1.0f);
+    }
+  }
+
+  @Test
+  public void shouldDrawFromRandomAsGeneratorsUsedTo() {
+    RandomSource source = RandomSource.of(new Random(42L));
+    Random expected = new Random(42L);
+    byte[] ascii = new byte[5];
+    source.nextAscii(ascii, 0, ascii.length);
+    for (byte character : ascii) {
+      assertThat(character, is((byte) expected.nextInt(128)));
+    }
+    long bound = 1_000_000_000_000_000L;
+    assertThat(source.nextLong(bound), is((long) (expected.nextDouble() * bound)));
+  }
+
+  @Test
+  public void shouldOnlyFillRequestedBytes() {
+    byte[] bytes = new byte[13];
+    RandomSource.xoroshiro128PlusPlus(42L).nextBytes(bytes, 2, 9);
+    assertThat(bytes[0], is((byte) 0));
+    assertThat(bytes[1], is((byte) 0));
+    assertThat(bytes[11], is((byte) 0));
+    assertThat(bytes[12], is((byte) 0));
+  }
+
+  @Test
+  public void shouldGenerateSameRecordsForSameRandomSourceSeed() {
+    Generator first = new Generator.Builder()
+        .schemaString(REGEX_SCHEMA)
+        .randomSource(RandomSource.xoroshiro128PlusPlus(7L))
+        .build();
+    Generator second = new Generator.Builder()
+        .schemaString(REGEX_SCHEMA)
+        .randomSource(RandomSource.xoroshiro128PlusPlus(7L))
+        .build();
+    for (int i = 0; i < 10; i++) {
+      GenericRecord expected = (GenericRecord) first.generate();
+      assertThat(second.generate(), is(expected));
+    }
+  }
+
+  private static void assertReproducible(LongFunction<RandomSource> factory) {
+    long[] first = new long[16];
+    long[] second = new long[16];
+    factory.apply(1234L).nextLongs(first);
+    factory.apply(1234L).nextLongs(second);
+    assertTrue(Arrays.equals(first, second));
+  }
+}
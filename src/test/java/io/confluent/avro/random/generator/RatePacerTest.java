@@ -0,0 +1,38 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+
+public class RatePacerTest {
+
+  @Test
+  public void shouldScheduleRecordsEvenly() {
+    RatePacer pacer = new RatePacer(1000.0, 10);
+    long start = 1_000_000_000L;
+    assertThat(pacer.reserve(1, start), is(start));
+    assertThat(pacer.reserve(1, start), is(start + 1_000_000L));
+    assertThat(pacer.reserve(5, start), is(start + 2_000_000L));
+    assertThat(pacer.reserve(1, start + 3_000_000L), is(start + 7_000_000L));
+  }
+
+  @Test
+  public void shouldCatchUpAtMostOneBurst() {
+    RatePacer pacer = new RatePacer(1000.0, 10);
+    long start = 1_000_000_000L;
+    pacer.reserve(1, start);
+
+    // Five records behind; all of them are due immediately
+    long now = start + 6_000_000L;
+    assertThat(pacer.reserve(5, now), is(start + 1_000_000L));
+    assertThat(pacer.reserve(1, now), is(start + 6_000_000L));
+
+    // A second behind; only the burst of ten records is caught up on
+    now = start + 1_007_000_000L;
+    assertThat(pacer.reserve(10, now), is(now - 10_000_000L));
+    assertThat(pacer.reserve(1, now), is(now));
+    assertThat(pacer.reserve(1, now), is(now + 1_000_000L));
+  }
+}
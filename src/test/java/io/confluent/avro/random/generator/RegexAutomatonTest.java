@@ -0,0 +1,61 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+
+public class RegexAutomatonTest {
+
+  private final RandomSource random = RandomSource.xoroshiro128PlusPlus(42L);
+
+  @Test
+  public void shouldGenerateMatchingStrings() {
+    String[] regexes = {
+        "[a-z0-9._%+-]+@[a-z0-9.-]+\\.[a-z]{2,4}",
+        "\\(\\d{3}\\) \\d{3}-\\d{4}",
+        "(foo|bar)+baz?",
+        "^ID-[0-9A-F]{8}$",
+        "[^a-z]{3}\\w\\s\\S\\D\\W.",
+        "(?:ab|cd)*e{2,3}?x",
+        "(a|b)*a(a|b){5}"
+    };
+    for (String regex : regexes) {
+      Pattern pattern = Pattern.compile(regex);
+      RegexAutomaton.Sampler sampler = RegexAutomaton.compile(regex).sampler(0, 40);
+      char[] buffer = new char[sampler.maxLength()];
+      for (int i = 0; i < 1000; i++) {
+        String generated = new String(buffer, 0, sampler.next(random, buffer));
+        assertTrue(
+            String.format("'%s' does not match '%s'", generated, regex),
+            pattern.matcher(generated).matches()
+        );
+      }
+    }
+  }
+
+  @Test
+  public void shouldRespectLengthBounds() {
+    RegexAutomaton.Sampler sampler = RegexAutomaton.compile("[a-zA-Z]{5,}").sampler(8, 16);
+    char[] buffer = new char[sampler.maxLength()];
+    for (int i = 0; i < 1000; i++) {
+      int length = sampler.next(random, buffer);
+      assertTrue("Length out of bounds: " + length, length >= 8 && length < 16);
+    }
+  }
+
+  @Test
+  public void shouldFallBackToClosestMatchableLength() {
+    assertThat(RegexAutomaton.compile("[A-Z]{2}").sampler(8, 16).maxLength(), is(2));
+    assertThat(RegexAutomaton.compile("[a-z]{20}").sampler(8, 16).maxLength(), is(20));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void shouldRejectBackReferences() {
+    RegexAutomaton.compile("(a)\\1");
+  }
+}
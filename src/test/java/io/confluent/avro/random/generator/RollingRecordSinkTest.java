@@ -0,0 +1,127 @@
+package io.confluent.avro.random.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+public class RollingRecordSinkTest {
+
+  @Test
+  public void shouldStartNewFileAtRecordLimit() throws IOException {
+    Map<Integer, List<Integer>> files = new TreeMap<>();
+    try (RecordSink sink = new RollingRecordSink(file -> open(files, file), 1, 3, 4, 0, false)) {
+      for (int i = 0; i < 5; i++) {
+        sink.write(records(2, 10));
+      }
+    }
+    assertThat(files.keySet().toString(), is("[1, 4, 7]"));
+    assertThat(files.get(1), is(Arrays.asList(2, 2)));
+    assertThat(files.get(4), is(Arrays.asList(2, 2)));
+    assertThat(files.get(7), is(Arrays.asList(2)));
+  }
+
+  @Test
+  public void shouldSplitBatchesAtRecordLimit() throws IOException {
+    Map<Integer, List<Integer>> files = new TreeMap<>();
+    try (RecordSink sink = new RollingRecordSink(file -> open(files, file), 0, 1, 4, 0, true)) {
+      for (int i = 0; i < 3; i++) {
+        sink.write(records(3, 10));
+      }
+    }
+    assertThat(files.get(0), is(Arrays.asList(3, 1)));
+    assertThat(files.get(1), is(Arrays.asList(2, 2)));
+    assertThat(files.get(2), is(Arrays.asList(1)));
+  }
+
+  @Test
+  public void shouldNotStartSplitJsonFilesWithSeparator() throws IOException {
+    Map<Integer, ByteArrayOutputStream> files = new TreeMap<>();
+    RollingRecordSink.Files jsonFiles = file -> {
+      files.put(file, new ByteArrayOutputStream());
+      return new JsonRecordSink(files.get(file));
+    };
+    try (RecordSink sink = new RollingRecordSink(jsonFiles, 0, 1, 2, 0, true)) {
+      sink.write(jsonRecords(0, 3));
+      sink.write(jsonRecords(3, 2));
+    }
+    String separator = new String(JsonRecordSink.SEPARATOR, StandardCharsets.UTF_8);
+    assertThat(files.get(0).toString("UTF-8"), is("0" + separator + "1\n"));
+    assertThat(files.get(1).toString("UTF-8"), is("2" + separator + "3\n"));
+    assertThat(files.get(2).toString("UTF-8"), is("4\n"));
+  }
+
+  @Test
+  public void shouldStartNewFileAtByteLimit() throws IOException {
+    Map<Integer, List<Integer>> files = new TreeMap<>();
+    try (RecordSink sink = new RollingRecordSink(file -> open(files, file), 0, 1, 0, 25, false)) {
+      // The last batch is larger than the limit on its own, and gets a file to itself
+      sink.write(records(1, 10));
+      sink.write(records(1, 10));
+      sink.write(records(1, 10));
+      sink.write(records(3, 10));
+    }
+    assertThat(files.get(0), is(Arrays.asList(1, 1)));
+    assertThat(files.get(1), is(Arrays.asList(1)));
+    assertThat(files.get(2), is(Arrays.asList(3)));
+  }
+
+  @Test
+  public void shouldNotCreateFilesWithoutRecords() throws IOException {
+    Map<Integer, List<Integer>> files = new TreeMap<>();
+    new RollingRecordSink(file -> open(files, file), 0, 1, 1, 0, false).close();
+    assertThat(files.isEmpty(), is(true));
+  }
+
+  // Keeps track of the number of records in every batch written to each file
+  private static RecordSink open(Map<Integer, List<Integer>> files, int file) {
+    List<Integer> batches = new ArrayList<>();
+    files.put(file, batches);
+    return new RecordSink() {
+      @Override
+      public void write(EncodedRecords records) {
+        batches.add(records.records());
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  // Numbers, separated the way Avro's JSON encoder separates the records of a batch
+  private static EncodedRecords jsonRecords(int first, int count) {
+    EncodedRecords records = new EncodedRecords();
+    for (int i = first; i < first + count; i++) {
+      if (i > first) {
+        records.write(JsonRecordSink.SEPARATOR, 0, JsonRecordSink.SEPARATOR.length);
+      }
+      records.write('0' + i);
+      records.endRecord();
+    }
+    return records;
+  }
+
+  private static EncodedRecords records(int count, int size) {
+    EncodedRecords records = new EncodedRecords();
+    for (int i = 0; i < count; i++) {
+      records.write(new byte[size], 0, size);
+      records.endRecord();
+    }
+    return records;
+  }
+}